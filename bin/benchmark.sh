@@ -0,0 +1,31 @@
+#!/bin/bash
+# Measures the scaling of the training on the local runtime: runs the job
+# once per number of ComputeTasks and training set size, and appends the
+# throughput of every run to $BENCHMARK_DIR/results.csv.
+#
+#   bin/benchmark.sh [options of LinearSGD_REEF and LinearSGD_Benchmark]
+#
+# WORKERS and ROWS are space separated lists, for example
+#   WORKERS="1 2 4 8" ROWS="100000 1000000" bin/benchmark.sh -dim 100 -epochs 20
+set -e
+
+cd "$(dirname "$0")/.."
+JAR=${JAR:-target/SGD_Linear_Regression-1.0-SNAPSHOT-shaded.jar}
+WORKERS=${WORKERS:-"1 2 4"}
+ROWS=${ROWS:-"100000"}
+BENCHMARK_DIR=${BENCHMARK_DIR:-/tmp/linear-sgd-benchmark}
+JAVA_OPTS=${JAVA_OPTS:-"-Djava.util.logging.config.class=com.microsoft.reef.util.logging.Config"}
+
+if [ ! -f "$JAR" ]; then
+    mvn -B -q package -DskipTests
+fi
+
+for rows in $ROWS; do
+    for workers in $WORKERS; do
+        echo "Training on $rows rows with $workers ComputeTasks"
+        java $JAVA_OPTS -cp "$JAR" snu.BDCS.SGD_Linear_Regression.LinearSGD_Benchmark \
+            -splits "$workers" -rows "$rows" -benchmarkDir "$BENCHMARK_DIR" -timeout 30 "$@"
+    done
+done
+
+column -s, -t < "$BENCHMARK_DIR/results.csv"
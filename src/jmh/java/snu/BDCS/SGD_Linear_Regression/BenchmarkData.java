@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import java.util.Random;
+
+/**
+ * Synthetic inputs of the benchmarks, generated from a fixed seed so that
+ * every run measures the same data.
+ * <p/>
+ * Dense partitions store every feature of every row; sparse ones store
+ * {@link #SPARSE_NON_ZEROS} random features per row. The values are scaled
+ * so that the squared norm of a row stays below 1, which keeps plain SGD
+ * stable at any dimension and the timings free of overflows.
+ */
+final class BenchmarkData {
+
+    static final String DENSE = "dense";
+    static final String SPARSE = "sparse";
+
+    /**
+     * The number of stored features of a sparse row
+     */
+    static final int SPARSE_NON_ZEROS = 16;
+
+    /**
+     * The most values a dense partition holds, 128MB of doubles. Dense
+     * partitions of more rows than fit are cut to that size.
+     */
+    static final long MAX_DENSE_VALUES = 1L << 24;
+
+    private static final long SEED = 20140101L;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @return the number of rows a partition of the layout actually holds
+     */
+    static int rows(String layout, int dimension, int rows) {
+        if (DENSE.equals(layout)) {
+            return (int) Math.max(1, Math.min(rows, MAX_DENSE_VALUES / dimension));
+        }
+        return rows;
+    }
+
+    static PartitionStore partition(String layout, int dimension, int rows) {
+        final Random random = new Random(SEED);
+        final double[] truth = vector(dimension, 1.0);
+        final int numRows = rows(layout, dimension, rows);
+        if (DENSE.equals(layout)) {
+            final DensePartitionStore.Builder builder = new DensePartitionStore.Builder(dimension);
+            final double[] row = new double[dimension];
+            final double scale = 1.0 / Math.sqrt(dimension);
+            for (int r = 0; r < numRows; r++) {
+                double label = 0.0;
+                for (int i = 0; i < dimension; i++) {
+                    row[i] = scale * random.nextDouble();
+                    label += truth[i] * row[i];
+                }
+                builder.addRow(row, label);
+            }
+            return builder.build();
+        } else if (SPARSE.equals(layout)) {
+            final SparsePartitionStore.Builder builder = new SparsePartitionStore.Builder(dimension);
+            final int nonZeros = Math.min(SPARSE_NON_ZEROS, dimension);
+            final int[] indices = new int[nonZeros];
+            final double[] values = new double[nonZeros];
+            final double scale = 1.0 / Math.sqrt(nonZeros);
+            for (int r = 0; r < numRows; r++) {
+                double label = 0.0;
+                for (int k = 0; k < nonZeros; k++) {
+                    indices[k] = random.nextInt(dimension);
+                    values[k] = scale * random.nextDouble();
+                    label += truth[indices[k]] * values[k];
+                }
+                builder.addRow(indices, values, nonZeros, label);
+            }
+            return builder.build();
+        }
+        throw new IllegalArgumentException("Unknown layout: " + layout);
+    }
+
+    static double[] vector(int dimension, double density) {
+        return vector(dimension, density, 0);
+    }
+
+    /**
+     * @param density the fraction of the values that are not zero
+     * @param stream  tells apart vectors of the same size and density
+     */
+    static double[] vector(int dimension, double density, int stream) {
+        final Random random = new Random(SEED + 31L * stream + dimension);
+        final double[] vector = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            if (random.nextDouble() < density) {
+                vector[i] = random.nextGaussian();
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * @return the density of the vectors of the layout: every value of a
+     * dense vector and a fraction of a sparse one small enough for
+     * {@link VectorCodec} to pick its sparse encoding
+     */
+    static double density(String layout) {
+        if (DENSE.equals(layout)) {
+            return 1.0;
+        } else if (SPARSE.equals(layout)) {
+            return 0.01;
+        }
+        throw new IllegalArgumentException("Unknown layout: " + layout);
+    }
+
+    static TaskTracer tracer() {
+        return new TaskTracer("benchmark", "OFF", 0.0);
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One local SGD epoch of a ComputeTask over its partition, the update the
+ * tasks spend nearly all their time in.
+ * <p/>
+ * Dense partitions of many features are cut to {@link BenchmarkData#MAX_DENSE_VALUES}
+ * values, so compare the times of a configuration across builds rather
+ * than across row counts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SGDUpdaterBenchmark {
+
+    @Param({"6", "1000", "100000", "1000000"})
+    public int dimension;
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({BenchmarkData.DENSE, BenchmarkData.SPARSE})
+    public String layout;
+
+    @Param({"1", "32"})
+    public int batchSize;
+
+    private PartitionStore partition;
+
+    private SGDUpdater updater;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        partition = BenchmarkData.partition(layout, dimension, rows);
+        final Optimizer optimizer = new SGDOptimizer(
+                new LearningRateSchedule(0.1, LearningRateSchedule.CONSTANT, 0.5, 1000, 0));
+        updater = new SGDUpdater(dimension, true, optimizer.newRule(dimension + 1), batchSize,
+                BenchmarkData.tracer());
+    }
+
+    /**
+     * Starts every iteration from the same model, so that later iterations
+     * do not run on a converged one
+     */
+    @Setup(Level.Iteration)
+    public void resetTheta() {
+        Arrays.fill(updater.getTheta(), 0.0);
+    }
+
+    @Benchmark
+    public double epoch() {
+        updater.epoch(partition);
+        return updater.takeSquaredError();
+    }
+}
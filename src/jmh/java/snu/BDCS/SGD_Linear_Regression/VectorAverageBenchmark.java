@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The weighted average the reduce computes at every node of the
+ * aggregation tree, over as many model messages as the node has children.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorAverageBenchmark {
+
+    @Param({"6", "1000", "100000", "1000000"})
+    public int dimension;
+
+    @Param({"2", "8"})
+    public int fanIn;
+
+    private VectorAverage average;
+
+    private List<Vector> messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        average = new VectorAverage(BenchmarkData.tracer());
+        messages = new ArrayList<>(fanIn);
+        for (int m = 0; m < fanIn; m++) {
+            final double[] theta = BenchmarkData.vector(dimension, 1.0, m);
+            messages.add(ModelMessage.of(theta, 1.0 + m, 100.0 * (m + 1)));
+        }
+    }
+
+    @Benchmark
+    public Vector apply() {
+        return average.apply(messages);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the vectors exchanged every round: theta on the
+ * broadcast and the model messages on the reduce, both through the
+ * {@link Vector} codec, and the primitive arrays of the parameter server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorCodecBenchmark {
+
+    @Param({"6", "1000", "100000", "1000000"})
+    public int dimension;
+
+    @Param({BenchmarkData.DENSE, BenchmarkData.SPARSE})
+    public String layout;
+
+    private final VectorCodec codec = new VectorCodec();
+
+    private double[] array;
+
+    private Vector vector;
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        array = BenchmarkData.vector(dimension, BenchmarkData.density(layout));
+        vector = new DenseVector(dimension);
+        for (int i = 0; i < dimension; i++) {
+            vector.set(i, array[i]);
+        }
+        encoded = codec.encode(vector);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(vector);
+    }
+
+    @Benchmark
+    public Vector decode() {
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] encodeArray() {
+        return VectorCodec.encode(array);
+    }
+
+    @Benchmark
+    public double[] decodeInto() {
+        VectorCodec.decodeInto(encoded, array);
+        return array;
+    }
+}
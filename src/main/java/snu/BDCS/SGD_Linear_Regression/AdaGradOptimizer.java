@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+
+/**
+ * Per-coordinate steps scaled down by the root of the sum of all the
+ * squared gradients of the coordinate so far.
+ */
+public final class AdaGradOptimizer implements Optimizer {
+
+    private final LearningRateSchedule schedule;
+    private final double epsilon;
+
+    @Inject
+    public AdaGradOptimizer(LearningRateSchedule schedule,
+                            @Parameter(LinearSGD_Driver.Parameters.Epsilon.class) double epsilon) {
+        this.schedule = schedule;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * A zero gradient neither adds to the sum nor moves theta
+     */
+    @Override
+    public boolean supportsSparse() {
+        return true;
+    }
+
+    @Override
+    public Rule newRule(int dimension) {
+        final double[] squares = new double[dimension];
+        return new ScheduledRule(schedule, squares) {
+            @Override
+            public void apply(double[] theta, int index, double gradient) {
+                final double sum = squares[index] + gradient * gradient;
+                squares[index] = sum;
+                theta[index] -= rate * gradient / (Math.sqrt(sum) + epsilon);
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * Per-coordinate steps along a moving average of the gradients (decay
+ * beta1), scaled down by the root of a moving average of their squares
+ * (decay beta2), both corrected for their initialization at zero.
+ */
+public final class AdamOptimizer implements Optimizer {
+
+    private final LearningRateSchedule schedule;
+    private final double beta1;
+    private final double beta2;
+    private final double epsilon;
+
+    @Inject
+    public AdamOptimizer(LearningRateSchedule schedule,
+                         @Parameter(LinearSGD_Driver.Parameters.Beta1.class) double beta1,
+                         @Parameter(LinearSGD_Driver.Parameters.Beta2.class) double beta2,
+                         @Parameter(LinearSGD_Driver.Parameters.Epsilon.class) double epsilon) {
+        this.schedule = schedule;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * The moving average of the gradients keeps moving theta along steps of
+     * zero gradient, which a sparse kernel does not apply
+     */
+    @Override
+    public boolean supportsSparse() {
+        return false;
+    }
+
+    @Override
+    public Rule newRule(int dimension) {
+        final double[] means = new double[dimension];
+        final double[] squares = new double[dimension];
+        return new ScheduledRule(schedule, means, squares) {
+
+            /**
+             * beta1 and beta2 to the power of the step
+             */
+            private double beta1Power = 1.0;
+            private double beta2Power = 1.0;
+
+            /**
+             * The rate of the step with the bias corrections folded in
+             */
+            private double correctedRate;
+
+            @Override
+            public void nextStep() {
+                super.nextStep();
+                beta1Power *= beta1;
+                beta2Power *= beta2;
+                correctedRate = rate * Math.sqrt(1 - beta2Power) / (1 - beta1Power);
+            }
+
+            @Override
+            public void read(DataInput in) throws IOException {
+                super.read(in);
+                beta1Power = Math.pow(beta1, step);
+                beta2Power = Math.pow(beta2, step);
+            }
+
+            @Override
+            public void apply(double[] theta, int index, double gradient) {
+                final double m = beta1 * means[index] + (1 - beta1) * gradient;
+                final double v = beta2 * squares[index] + (1 - beta2) * gradient * gradient;
+                means[index] = m;
+                squares[index] = v;
+                theta[index] -= correctedRate * m / (Math.sqrt(v) + epsilon);
+            }
+        };
+    }
+}
@@ -3,95 +3,450 @@
  */
 package snu.BDCS.SGD_Linear_Regression;
 
-import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
 import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import com.microsoft.reef.io.data.loading.api.DataSet;
 import com.microsoft.reef.io.network.group.operators.Broadcast;
+import com.microsoft.reef.io.network.group.operators.Gather;
 import com.microsoft.reef.io.network.group.operators.Reduce;
-import com.microsoft.reef.io.network.group.operators.Scatter;
+import com.microsoft.reef.io.network.util.Pair;
 import com.microsoft.reef.task.Task;
+import com.microsoft.tang.annotations.Parameter;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
 
 import javax.inject.Inject;
-import java.util.List;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * ComputeTask Receives the partial matrix(row partitioned) it is
- * responsible for. Also receives one column vector per iteration and computes
- * the partial product of this vector with its assigned partial matrix The
- * partial product across all the compute tasks are concatenated by doing a
- * Reduce with Concat as the Reduce Function
+ * ComputeTask parses the input split that was loaded into its context and
+ * keeps it as its partition. The partition stays in the
+ * {@link PartitionCache} of the context for the tasks that come after it on
+ * the same evaluator. Those tasks take it from the standardization it has
+ * to the one they need.
+ * <p/>
+ * The task receives theta once per round and runs one SGD epoch over the
+ * partition. It then sends the new theta back, weighted by the number of
+ * examples, to be averaged by the Reduce with VectorAverage as the Reduce
+ * Function. The tasks that are inner nodes of the aggregation tree average
+ * their children in first, see {@link PartialAverage}.
+ * <p/>
+ * A theta stamped with its epoch makes the task checkpoint its optimizer
+ * state for that epoch or, before its first epoch of a resumed job, restore it.
+ * When the driver closes the task to rebuild the group, it returns at once.
+ * <p/>
+ * In the stale synchronous mode theta comes from the controller's
+ * {@link ParameterServer} instead, and the change of every epoch goes back
+ * to it without waiting for the other tasks.
  *
  * @author shravan
  */
 public class ComputeTask implements Task {
     private final Logger logger = Logger.getLogger(ComputeTask.class
             .getName());
-    private static final double RUNNING_RATE = 0.001;
-    private static Vector theta = new DenseVector(6);
     /**
      * The Group Communication Operators that are needed by this task. These
      * will be injected into the constructor by TANG. The operators used here
      * are complementary to the ones used in the ControllerTask
      */
-    Scatter.Receiver<Vector> scatterReceiver;
     Broadcast.Receiver<Vector> broadcastReceiver;
     Reduce.Sender<Vector> reduceSender;
+    Gather.Sender<Vector> gatherSender;
+
+    /**
+     * Averages the children of this task in, if it has any
+     */
+    private final PartialAverage partialAverage;
+
+    /**
+     * The input split loaded into this task's context by the data loading service
+     */
+    private final DataSet<LongWritable, Text> dataSet;
+
+    /**
+     * The partition parsed by an earlier task of this context
+     */
+    private final PartitionCache cache;
+
+    /**
+     * The number of examples folded into one SGD update
+     */
+    private final int batchSize;
+
+    /**
+     * The number of features of every example
+     */
+    private final int dimension;
+
+    /**
+     * "csv" for dense comma separated lines, "libsvm" for sparse ones
+     */
+    private final String inputFormat;
+
+    /**
+     * Whether the partition is standardized with the statistics of the
+     * whole training set before training
+     */
+    private final boolean standardize;
+
+    /**
+     * Whether the model has a bias, the weight of a virtual constant feature
+     */
+    private final boolean intercept;
+
+    /**
+     * The number of threads training on the partition
+     */
+    private final int numThreads;
+
+    /**
+     * "hogwild" or "replica", see {@link ParallelSGDUpdater}
+     */
+    private final String parallelMode;
+
+    /**
+     * The update rule, bound by the driver
+     */
+    private final Optimizer optimizer;
+
+    /**
+     * "bsp" or "ssp", see {@link ParameterServer}
+     */
+    private final String syncMode;
+
+    /**
+     * The host:port of the controller's parameter server
+     */
+    private final String serverAddress;
+
+    /**
+     * The precision of the exchange with the parameter server
+     */
+    private final String precision;
+
+    /**
+     * Whether the rounding error of a push goes with the next one
+     */
+    private final boolean errorFeedback;
+
+    /**
+     * The checkpoints of the optimizer state of this task
+     */
+    private final ModelCheckpoints checkpoints;
+
+    /**
+     * Interrupts the task when the driver closes it
+     */
+    private final TaskCloseHandler closer;
+
+    private final TaskReport report;
+
+    /**
+     * The live metrics of this task, sent to the driver
+     */
+    private final TaskMetrics metrics;
+
+    private final TaskTracer tracer;
 
     /**
      * This class is instantiated by TANG
      *
-     * @param scatterReceiver   The receiver for the scatter operation
      * @param broadcastReceiver The receiver for the broadcast operation
      * @param reduceSender      The sender for the reduce operation
+     * @param gatherSender      The sender of the feature moments
+     * @param partialAverage    What this task sends up the reduce tree
+     * @param dataSet           The input split of this task
+     * @param cache             The partition cache of the context
+     * @param batchSize         The micro-batch size of the SGD updates
+     * @param dimension         The number of features
+     * @param inputFormat       The format of the input lines
+     * @param standardize       Whether to standardize the partition before training
+     * @param intercept         Whether the model has a bias
+     * @param numThreads        The number of threads training on the partition
+     * @param parallelMode      How the threads share theta
+     * @param optimizer         The update rule
+     * @param syncMode          Whether to train bulk or stale synchronously
+     * @param serverAddress     The address of the parameter server
+     * @param precision         The precision of the exchanged vectors
+     * @param errorFeedback     Whether to carry the rounding error of a push over
+     * @param checkpoints       The checkpoints of this task
+     * @param closer            The close handler of this task
+     * @param report            The report of this task
+     * @param metrics           The live metrics of this task
+     * @param tracer            The tracer of this task
      */
     @Inject
-    public ComputeTask(Scatter.Receiver<Vector> scatterReceiver,
-                       Broadcast.Receiver<Vector> broadcastReceiver,
-                       Reduce.Sender<Vector> reduceSender) {
+    public ComputeTask(Broadcast.Receiver<Vector> broadcastReceiver,
+                       Reduce.Sender<Vector> reduceSender,
+                       Gather.Sender<Vector> gatherSender,
+                       PartialAverage partialAverage,
+                       DataSet<LongWritable, Text> dataSet,
+                       PartitionCache cache,
+                       @Parameter(LinearSGD_Driver.Parameters.BatchSize.class) int batchSize,
+                       @Parameter(LinearSGD_Driver.Parameters.Dimension.class) int dimension,
+                       @Parameter(LinearSGD_Driver.Parameters.InputFormat.class) String inputFormat,
+                       @Parameter(LinearSGD_Driver.Parameters.Standardize.class) boolean standardize,
+                       @Parameter(LinearSGD_Driver.Parameters.FitIntercept.class) boolean intercept,
+                       @Parameter(LinearSGD_Driver.Parameters.NumThreads.class) int numThreads,
+                       @Parameter(LinearSGD_Driver.Parameters.ParallelMode.class) String parallelMode,
+                       Optimizer optimizer,
+                       @Parameter(LinearSGD_Driver.Parameters.SyncMode.class) String syncMode,
+                       @Parameter(LinearSGD_Driver.Parameters.ParameterServerAddress.class) String serverAddress,
+                       @Parameter(LinearSGD_Driver.Parameters.ExchangePrecision.class) String precision,
+                       @Parameter(LinearSGD_Driver.Parameters.ErrorFeedback.class) boolean errorFeedback,
+                       ModelCheckpoints checkpoints,
+                       TaskCloseHandler closer,
+                       TaskReport report,
+                       TaskMetrics metrics,
+                       TaskTracer tracer) {
         super();
-        this.scatterReceiver = scatterReceiver;
         this.broadcastReceiver = broadcastReceiver;
         this.reduceSender = reduceSender;
+        this.gatherSender = gatherSender;
+        this.partialAverage = partialAverage;
+        this.dataSet = dataSet;
+        this.cache = cache;
+        this.batchSize = batchSize;
+        this.dimension = dimension;
+        this.inputFormat = inputFormat;
+        this.standardize = standardize;
+        this.intercept = intercept;
+        this.numThreads = numThreads;
+        this.parallelMode = parallelMode;
+        this.optimizer = optimizer;
+        this.syncMode = syncMode;
+        this.serverAddress = serverAddress;
+        this.precision = precision;
+        this.errorFeedback = errorFeedback;
+        this.checkpoints = checkpoints;
+        this.closer = closer;
+        this.report = report;
+        this.metrics = metrics;
+        this.tracer = tracer;
     }
 
     @Override
     public byte[] call(byte[] memento) throws Exception {
-        // Receive the partial matrix using which
-        // we compute the dot products
-        logger.log(Level.INFO, "Waiting for scatterReceive");
-        System.out.print("Waiting for scatterReceive\n");
-        List<Vector> exampleSet = scatterReceiver.receive();
-        logger.log(Level.INFO, "Received: " + exampleSet);
-        System.out.print("Received: " + exampleSet + "\n");
-
-        if (!exampleSet.isEmpty()) {
-            computeTheta(exampleSet);
-            reduceSender.send(theta);
+        closer.register(Thread.currentThread());
+        // Parse our own split into the partition using which
+        // we compute the dot products, unless an earlier task did
+        PartitionStore partition = cache.get(inputFormat, dimension);
+        if (partition == null) {
+            partition = loadPartition();
+            cache.put(inputFormat, dimension, partition);
+            logger.log(Level.INFO, "Loaded " + partition.getNumRows() + " examples");
         } else {
-            Vector zero = new DenseVector(6);
-            for (int i=0; i<6; i++) zero.set(i, 0.0);
-            reduceSender.send(zero);
+            logger.log(Level.INFO, "Reusing the " + partition.getNumRows() + " cached examples");
+        }
+        ParallelSGDUpdater updater = new ParallelSGDUpdater(dimension, intercept, optimizer, batchSize,
+                numThreads, parallelMode, tracer);
+        int modelSize = ModelMessage.modelSize(dimension, intercept);
+
+        int epoch = 0;
+        metrics.set("epoch", epoch);
+        metrics.set("rows", partition.getNumRows());
+        ParameterClient client = null;
+        try {
+            if (standardize) {
+                // The moments of our partition go to the controller, which
+                // answers with the scaling of the whole training set
+                gatherSender.send(cache.moments());
+                cache.rescale(FeatureScaling.fromVector(broadcastReceiver.receive()));
+            } else {
+                // An earlier task may have standardized the cached partition
+                cache.rescale(null);
+            }
+
+            if (ParameterServer.SSP.equals(syncMode)) {
+                // One local epoch per pulled model, pushing its change,
+                // until the server has no model left
+                client = new ParameterClient(serverAddress, partition.getNumRows(),
+                        ParameterServer.codec(precision, errorFeedback, dimension, intercept, metrics), metrics,
+                        ParameterClient.CONNECT_TIMEOUT_MILLIS);
+                double[] pulled = new double[modelSize];
+                double[] delta = new double[modelSize];
+                long time = System.nanoTime();
+                while (client.pull(pulled)) {
+                    time = metrics.time(TaskMetrics.Timer.BROADCAST, time);
+                    updater.setTheta(pulled);
+                    updater.epoch(partition);
+                    time = metrics.time(TaskMetrics.Timer.COMPUTE, time);
+                    double[] trained = updater.getTheta();
+                    for (int i = 0; i < modelSize; i++) {
+                        delta[i] = trained[i] - pulled[i];
+                    }
+                    client.push(delta, updater.takeMeanSquaredError(partition.getNumRows()));
+                    time = metrics.time(TaskMetrics.Timer.REDUCE, time);
+                    ++epoch;
+                    metrics.set("epoch", epoch);
+                    if (tracer.sample(Level.FINE)) {
+                        tracer.trace("epoch", "epoch", epoch, "rows", partition.getNumRows());
+                    }
+                }
+            } else {
+                // One local epoch over the cached partition per broadcast model,
+                // until the controller broadcasts an empty model
+                long time = System.nanoTime();
+                while (true) {
+                    Vector model = broadcastReceiver.receive();
+                    time = metrics.time(TaskMetrics.Timer.BROADCAST, time);
+                    if (model.size() == 0) {
+                        break;
+                    }
+                    if (ModelMessage.isStamped(model, modelSize)) {
+                        if (epoch == 0) {
+                            restoreState(updater, ModelMessage.stamp(model));
+                        } else {
+                            checkpointState(updater, ModelMessage.stamp(model));
+                        }
+                    }
+                    // Weighted by the partition size, an empty partition weighs nothing
+                    updater.setTheta(model);
+                    updater.epoch(partition);
+                    time = metrics.time(TaskMetrics.Timer.COMPUTE, time);
+                    sendPartial(ModelMessage.of(updater.getTheta(),
+                            updater.takeMeanSquaredError(partition.getNumRows()), partition.getNumRows()));
+                    time = metrics.time(TaskMetrics.Timer.REDUCE, time);
+                    ++epoch;
+                    metrics.set("epoch", epoch);
+                    if (tracer.sample(Level.FINE)) {
+                        tracer.trace("epoch", "epoch", epoch, "rows", partition.getNumRows());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            if (!closer.isClosed()) {
+                throw e;
+            }
+            logger.log(Level.INFO, "Closed by the driver after " + epoch + " epochs");
+            return null;
+        } finally {
+            if (client != null) {
+                client.close();
+            }
+            updater.close();
+            tracer.close();
+        }
+        logger.log(Level.INFO, "Finished after " + epoch + " epochs");
+        report.write("epochs", epoch, "rows", partition.getNumRows());
+        // Where the time went, for the driver to log
+        return metrics.summary().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Restores the optimizer state checkpointed at the given epoch. Without
+     * it training goes on with fresh optimizer state.
+     */
+    private void restoreState(ParallelSGDUpdater updater, int stamp) throws InterruptedException {
+        try {
+            if (checkpoints.latestEpoch() != stamp) {
+                logger.log(Level.WARNING, "No optimizer state for epoch " + stamp + ", starting it over");
+                return;
+            }
+            DataInputStream in = checkpoints.openLatest();
+            try {
+                updater.readState(in);
+            } finally {
+                in.close();
+            }
+            logger.log(Level.INFO, "Restored the optimizer state of epoch " + stamp);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not restore the optimizer state of epoch " + stamp, e);
         }
-        return null;
     }
 
-    private void computeTheta(List<Vector> exampleSet) {
-        double temp = 0;
-        Vector previous_theta;
-        for (Vector example : exampleSet) {
-            Vector next_theta = new DenseVector(6);
-            for (int i = 0; i<6; i++) {
-                previous_theta = theta;
-                double hypothesis = previous_theta.dot(example);
-                temp = (theta.get(i) - (RUNNING_RATE * (hypothesis - example.get(6)) * example.get(i)));
-                System.out.print(theta.get(i)+" - "+RUNNING_RATE+" * ("+hypothesis+" - "+example.get(6)+") *"+example.get(i)+" = ");
-                next_theta.set(i, temp);
-                System.out.print(temp + " = ");
-                System.out.print(next_theta.get(i)+"\n");
+    /**
+     * Checkpoints the optimizer state after the given epoch. A failed
+     * checkpoint is logged rather than failing the training.
+     */
+    private void checkpointState(ParallelSGDUpdater updater, int stamp) throws InterruptedException {
+        try {
+            DataOutputStream out = checkpoints.create();
+            updater.writeState(out);
+            checkpoints.commit(out, stamp);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not checkpoint the optimizer state of epoch " + stamp, e);
+        }
+    }
+
+    /**
+     * Sends this task's contribution up the reduce, with the contributions
+     * of its children averaged in if it is an inner node of the tree
+     *
+     * @param message the theta of this task as a {@link ModelMessage}
+     */
+    private void sendPartial(Vector message) throws Exception {
+        reduceSender.send(partialAverage.of(message));
+    }
+
+    private PartitionStore loadPartition() {
+        if ("libsvm".equals(inputFormat)) {
+            return loadSparsePartition();
+        } else if ("csv".equals(inputFormat)) {
+            return loadDensePartition();
+        }
+        throw new IllegalArgumentException("Unknown input format: " + inputFormat);
+    }
+
+    /**
+     * Parses the comma separated lines of the split into a DensePartitionStore.
+     * Every line holds the features followed by the label.
+     */
+    private DensePartitionStore loadDensePartition() {
+        DensePartitionStore.Builder builder = new DensePartitionStore.Builder(dimension);
+        double[] row = new double[dimension];
+        for (Pair<LongWritable, Text> keyValue : dataSet) {
+            String line = keyValue.second.toString().trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length - 1 != dimension) {
+                throw new IllegalArgumentException("Expected " + dimension
+                        + " features but found " + (fields.length - 1) + " in: " + line);
+            }
+            for (int i = 0; i < dimension; i++) {
+                row[i] = Double.parseDouble(fields[i].trim());
+            }
+            builder.addRow(row, Double.parseDouble(fields[dimension].trim()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parses LIBSVM style lines of the split into a SparsePartitionStore.
+     * Every line holds the label followed by "index:value" pairs of the
+     * non-zero features, with indices starting at 1.
+     */
+    private SparsePartitionStore loadSparsePartition() {
+        SparsePartitionStore.Builder builder = new SparsePartitionStore.Builder(dimension);
+        int[] indices = new int[16];
+        double[] values = new double[16];
+        for (Pair<LongWritable, Text> keyValue : dataSet) {
+            String line = keyValue.second.toString().trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length - 1 > indices.length) {
+                indices = Arrays.copyOf(indices, fields.length - 1);
+                values = Arrays.copyOf(values, fields.length - 1);
+            }
+            for (int i = 1; i < fields.length; i++) {
+                int colon = fields[i].indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Expected index:value but found " + fields[i] + " in: " + line);
+                }
+                indices[i - 1] = Integer.parseInt(fields[i].substring(0, colon)) - 1;
+                values[i - 1] = Double.parseDouble(fields[i].substring(colon + 1));
             }
-            theta = next_theta;
-            System.out.print("The result of computeTheta: " + theta + "\n");
+            builder.addRow(indices, values, fields.length - 1, Double.parseDouble(fields[0]));
         }
+        return builder.build();
     }
 }
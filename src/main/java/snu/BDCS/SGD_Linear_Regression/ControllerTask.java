@@ -6,21 +6,37 @@ package snu.BDCS.SGD_Linear_Regression;
 import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
 import com.microsoft.reef.examples.groupcomm.matmul.Vector;
 import com.microsoft.reef.io.network.group.operators.Broadcast;
+import com.microsoft.reef.io.network.group.operators.Gather;
 import com.microsoft.reef.io.network.group.operators.Reduce;
-import com.microsoft.reef.io.network.group.operators.Scatter;
 import com.microsoft.reef.task.Task;
+import com.microsoft.tang.annotations.Parameter;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * ControllerTask Controls the matrix multiplication task Splits up the
- * input matrix into parts(row-wise) and scatters them amongst the compute
- * tasks Broadcasts each column vector Receives the reduced(concatenated)
- * partial products as the output vector
+ * ControllerTask drives the training rounds. The examples are loaded by the
+ * ComputeTasks themselves, so the controller only broadcasts theta and
+ * receives the averaged model and training loss through the reduce. It stops
+ * as soon as theta or the loss stop changing, and reports why it stopped.
+ * <p/>
+ * Every checkpoint interval it checkpoints the size of theta, theta, the
+ * epoch and the RMSE,
+ * and stamps the next broadcast with the epoch so that the ComputeTasks
+ * checkpoint their optimizer state along. A resumed job starts from the
+ * latest checkpoint and stamps its first broadcast the same way, which
+ * makes the ComputeTasks restore their optimizer state instead. When the
+ * driver closes it to rebuild the group, it checkpoints the latest theta
+ * for the controller that replaces it.
+ * <p/>
+ * In the stale synchronous mode it serves theta through a
+ * {@link ParameterServer} instead, and a round ends when the slowest
+ * ComputeTask finished its epoch. The optimizer state of the ComputeTasks is
+ * not checkpointed in that mode.
  *
  * @author shravan
  */
@@ -33,387 +49,428 @@ public class ControllerTask implements Task {
      * will be injected into the constructor by TANG. The operators used here
      * are complementary to the ones used in the ComputeTask
      */
-    Scatter.Sender<Vector> scatterSender;
     Broadcast.Sender<Vector> broadcastSender;
     Reduce.Receiver<Vector> reduceReceiver;
+    Gather.Receiver<Vector> gatherReceiver;
 
-    // The matrices
-    List<Vector> exampleSet;
-    private static Vector theta = new DenseVector(6);
-    // We compute AX'
+    /**
+     * Upper bound on the number of broadcast/reduce rounds
+     */
+    private final int maxEpochs;
+
+    /**
+     * Training stops once the L2 change of theta in one round drops below this
+     */
+    private final double tolerance;
+
+    /**
+     * Training stops once the RMSE improves by less than this fraction in one
+     * round, see {@link StoppingRule}
+     */
+    private final double lossTolerance;
+
+    /**
+     * The number of features of the model
+     */
+    private final int dimension;
+
+    /**
+     * Whether theta ends with a bias
+     */
+    private final boolean intercept;
+
+    /**
+     * Whether the data is standardized before training
+     */
+    private final boolean standardize;
+
+    /**
+     * Sparse features are only scaled, not centered
+     */
+    private final String inputFormat;
+
+    /**
+     * Combines the feature moments of the partitions
+     */
+    private final FeatureMoments featureMoments;
+
+    /**
+     * Checkpoint every this many epochs, 0 for never
+     */
+    private final int checkpointInterval;
+
+    /**
+     * Checkpoint once this many seconds passed since the last one, 0 for never
+     */
+    private final int checkpointSeconds;
+
+    /**
+     * Whether to start from the latest checkpoint
+     */
+    private final boolean resume;
+
+    private final ModelCheckpoints checkpoints;
+
+    /**
+     * "bsp" or "ssp", see {@link ParameterServer}
+     */
+    private final String syncMode;
+
+    /**
+     * The most epochs a ComputeTask may be ahead of the slowest in ssp mode
+     */
+    private final int staleness;
+
+    /**
+     * The host:port of the parameter server, of which the port is ours
+     */
+    private final String serverAddress;
+
+    /**
+     * The number of ComputeTasks that connect to the parameter server
+     */
+    private final int groupSize;
+
+    /**
+     * The precision of the exchange with the ComputeTasks in ssp mode
+     */
+    private final String precision;
+
+    /**
+     * How long the ComputeTasks have to hang up from the parameter server
+     */
+    private static final long FINISH_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Interrupts the task when the driver closes it
+     */
+    private final TaskCloseHandler closer;
+
+    /**
+     * Gets the throughput and convergence of the run
+     */
+    private final TaskReport report;
+
+    /**
+     * The live metrics of this task, sent to the driver
+     */
+    private final TaskMetrics metrics;
+
+    private final TaskTracer tracer;
+
+    /**
+     * The model of this task's run
+     */
+    private Vector theta;
 
     /**
      * This class is instantiated by TANG
      *
-     * @param scatterSender   The sender for the scatter operation
      * @param broadcastSender The sender for the broadcast operation
      * @param reduceReceiver  The receiver for the reduce operation
+     * @param gatherReceiver  The receiver of the feature moments
+     * @param maxEpochs       The maximum number of training rounds
+     * @param tolerance       The convergence threshold on the change of theta
+     * @param lossTolerance   The convergence threshold on the relative improvement of the RMSE
+     * @param dimension       The number of features
+     * @param intercept       Whether the model has a bias
+     * @param standardize     Whether to standardize the data before training
+     * @param inputFormat     The format of the input lines
+     * @param featureMoments  The function combining the feature moments
+     * @param checkpointInterval The number of epochs between checkpoints
+     * @param checkpointSeconds  The number of seconds between checkpoints
+     * @param resume          Whether to start from the latest checkpoint
+     * @param checkpoints     The checkpoints of this task
+     * @param closer          The close handler of this task
+     * @param syncMode        Whether to train bulk or stale synchronously
+     * @param staleness       The staleness bound of the stale synchronous mode
+     * @param serverAddress   The address of the parameter server
+     * @param groupSize       The number of ComputeTasks
+     * @param precision       The precision of the exchanged vectors
+     * @param report          The report of this task
+     * @param metrics         The live metrics of this task
+     * @param tracer          The tracer of this task
      */
     @Inject
-    public ControllerTask(Scatter.Sender<Vector> scatterSender,
-                          Broadcast.Sender<Vector> broadcastSender,
-                          Reduce.Receiver<Vector> reduceReceiver) {
+    public ControllerTask(Broadcast.Sender<Vector> broadcastSender,
+                          Reduce.Receiver<Vector> reduceReceiver,
+                          Gather.Receiver<Vector> gatherReceiver,
+                          @Parameter(LinearSGD_Driver.Parameters.MaxEpochs.class) int maxEpochs,
+                          @Parameter(LinearSGD_Driver.Parameters.Tolerance.class) double tolerance,
+                          @Parameter(LinearSGD_Driver.Parameters.LossTolerance.class) double lossTolerance,
+                          @Parameter(LinearSGD_Driver.Parameters.Dimension.class) int dimension,
+                          @Parameter(LinearSGD_Driver.Parameters.FitIntercept.class) boolean intercept,
+                          @Parameter(LinearSGD_Driver.Parameters.Standardize.class) boolean standardize,
+                          @Parameter(LinearSGD_Driver.Parameters.InputFormat.class) String inputFormat,
+                          FeatureMoments featureMoments,
+                          @Parameter(LinearSGD_Driver.Parameters.CheckpointInterval.class) int checkpointInterval,
+                          @Parameter(LinearSGD_Driver.Parameters.CheckpointSeconds.class) int checkpointSeconds,
+                          @Parameter(LinearSGD_Driver.Parameters.Resume.class) boolean resume,
+                          ModelCheckpoints checkpoints,
+                          TaskCloseHandler closer,
+                          @Parameter(LinearSGD_Driver.Parameters.SyncMode.class) String syncMode,
+                          @Parameter(LinearSGD_Driver.Parameters.Staleness.class) int staleness,
+                          @Parameter(LinearSGD_Driver.Parameters.ParameterServerAddress.class) String serverAddress,
+                          @Parameter(LinearSGD_Driver.Parameters.GroupSize.class) int groupSize,
+                          @Parameter(LinearSGD_Driver.Parameters.ExchangePrecision.class) String precision,
+                          TaskReport report,
+                          TaskMetrics metrics,
+                          TaskTracer tracer) {
         super();
-        this.scatterSender = scatterSender;
         this.broadcastSender = broadcastSender;
         this.reduceReceiver = reduceReceiver;
-
-        // For now initialize the matrix
-        // TODO: Read from disk/hdfs
-        double[][] matrix = {
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.125, 0.11},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.15, 0.27},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.175, 0.47},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.2, 0.78},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.225, 1.18},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.25, 1.82},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.275, 2.61},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.3, 3.76},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.325, 4.99},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.35, 7.16},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.375, 11.93},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.4, 20.11},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.425, 32.75},
-                {-2.3, 0.568, 4.78, 3.99, 3.17, 0.45, 49.49},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.125, 0.04},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.15, 0.17},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.175, 0.37},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.2, 0.66},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.225, 1.06},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.25, 1.59},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.275, 2.33},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.3, 3.29},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.325, 4.61},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.35, 7.11},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.375, 11.99},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.4, 21.09},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.425, 35.01},
-                {-2.3, 0.569, 4.78, 3.04, 3.64, 0.45, 51.8},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.125, 0.09},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.15, 0.29},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.175, 0.56},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.2, 0.86},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.225, 1.31},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.25, 1.99},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.275, 2.94},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.3, 4.21},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.325, 5.54},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.35, 8.25},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.375, 13.08},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.4, 21.4},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.425, 33.14},
-                {-2.3, 0.565, 4.78, 5.35, 2.76, 0.45, 50.14},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.125, 0.2},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.15, 0.35},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.175, 0.65},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.2, 0.93},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.225, 1.37},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.25, 1.97},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.275, 2.83},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.3, 3.99},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.325, 5.19},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.35, 8.03},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.375, 12.86},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.4, 21.51},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.425, 33.97},
-                {-2.3, 0.564, 5.1, 3.95, 3.53, 0.45, 50.36},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.125, 0.2},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.15, 0.35},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.175, 0.65},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.2, 0.93},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.225, 1.37},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.25, 1.97},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.275, 2.83},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.3, 3.99},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.325, 5.19},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.35, 8.03},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.375, 12.86},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.4, 21.51},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.425, 33.97},
-                {-2.4, 0.574, 4.36, 3.96, 2.76, 0.45, 50.36},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.125, 0.12},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.15, 0.26},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.175, 0.43},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.2, 0.69},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.225, 1.09},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.25, 1.67},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.275, 2.46},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.3, 3.43},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.325, 4.62},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.35, 6.86},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.375, 11.56},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.4, 20.63},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.425, 34.5},
-                {-2.4, 0.568, 4.34, 2.98, 3.15, 0.45, 54.23},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.125, 0.28},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.15, 0.44},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.175, 0.7},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.2, 1.07},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.225, 1.57},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.25, 2.23},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.275, 3.09},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.3, 4.09},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.325, 5.82},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.35, 8.28},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.375, 12.8},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.4, 20.41},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.425, 32.34},
-                {-2.3, 0.562, 5.14, 4.95, 3.17, 0.45, 47.29},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.125, 0.2},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.15, 0.38},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.175, 0.64},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.2, 0.97},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.225, 1.36},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.25, 1.98},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.275, 2.91},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.3, 4.35},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.325, 5.79},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.35, 8.04},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.375, 12.15},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.4, 19.18},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.425, 30.09},
-                {-2.4, 0.585, 4.78, 3.84, 3.32, 0.45, 44.38},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.125, 0.15},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.15, 0.32},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.175, 0.55},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.2, 0.86},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.225, 1.24},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.25, 1.76},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.275, 2.49},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.3, 3.45},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.325, 4.83},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.35, 7.37},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.375, 12.76},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.4, 21.99},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.425, 35.64},
-                {-2.2, 0.546, 4.78, 4.13, 3.07, 0.45, 53.07},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.125, 0.11},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.15, 0.24},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.175, 0.49},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.2, 0.79},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.225, 1.28},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.25, 1.96},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.275, 2.88},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.3, 4.14},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.325, 5.96},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.35, 9.07},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.375, 14.93},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.4, 24.13},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.425, 38.12},
-                {0, 0.565, 4.77, 3.99, 3.15, 0.45, 55.44},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.125, 0.07},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.15, 0.18},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.175, 0.4},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.2, 0.7},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.225, 1.14},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.25, 1.83},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.275, 2.77},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.3, 4.12},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.325, 5.41},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.35, 7.87},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.375, 12.71},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.4, 21.02},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.425, 34.58},
-                {-5, 0.565, 4.77, 3.99, 3.15, 0.45, 51.77},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.125, 0.08},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.15, 0.26},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.175, 0.5},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.2, 0.83},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.225, 1.28},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.25, 1.9},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.275, 2.68},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.3, 3.76},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.325, 5.57},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.35, 8.76},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.375, 14.24},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.4, 23.05},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.425, 35.46},
-                {0, 0.565, 5.1, 3.94, 3.51, 0.45, 51.99},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.125, 0.08},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.15, 0.24},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.175, 0.45},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.2, 0.77},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.225, 1.19},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.25, 1.76},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.275, 2.59},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.3, 3.85},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.325, 5.27},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.35, 7.74},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.375, 12.4},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.4, 20.91},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.425, 33.23},
-                {-5, 0.565, 5.1, 3.94, 3.51, 0.45, 49.14},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.125, 0.08},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.15, 0.25},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.175, 0.46},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.2, 0.75},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.225, 1.11},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.25, 1.57},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.275, 2.17},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.3, 2.98},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.325, 4.42},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.35, 7.84},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.375, 14.11},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.4, 24.14},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.425, 37.95},
-                {-2.3, 0.53, 5.11, 3.69, 3.51, 0.45, 55.17},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.125, 0.1},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.15, 0.23},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.175, 0.47},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.2, 0.76},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.225, 1.15},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.25, 1.65},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.275, 2.28},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.3, 3.09},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.325, 4.41},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.35, 7.51},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.375, 13.77},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.4, 23.96},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.425, 37.38},
-                {-2.3, 0.53, 4.76, 3.68, 3.16, 0.45, 56.46},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.125, 0.05},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.15, 0.17},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.175, 0.35},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.2, 0.63},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.225, 1.01},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.25, 1.43},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.275, 2.05},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.3, 2.73},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.325, 3.87},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.35, 7.19},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.375, 13.96},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.4, 25.18},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.425, 41.34},
-                {-2.3, 0.53, 4.34, 2.81, 3.15, 0.45, 62.42},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.125, 0.03},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.15, 0.18},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.175, 0.4},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.2, 0.73},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.225, 1.3},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.25, 2.16},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.275, 3.35},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.3, 5.06},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.325, 7.14},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.35, 10.36},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.375, 15.25},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.4, 23.15},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.425, 34.62},
-                {0, 0.6, 4.78, 4.24, 3.15, 0.45, 51.5},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.125, 0.06},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.15, 0.15},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.175, 0.34},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.2, 0.63},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.225, 1.13},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.25, 1.85},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.275, 2.84},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.3, 4.34},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.325, 6.2},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.35, 8.62},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.375, 12.49},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.4, 20.41},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.425, 32.46},
-                {-5, 0.6, 4.78, 4.24, 3.15, 0.45, 50.94},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.125, 0.16},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.15, 0.32},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.175, 0.59},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.2, 0.92},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.225, 1.37},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.25, 1.94},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.275, 2.62},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.3, 3.7},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.325, 5.45},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.35, 9.45},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.375, 16.31},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.4, 27.34},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.425, 41.77},
-                {0, 0.53, 4.78, 3.75, 3.15, 0.45, 60.85},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.125, 0.09},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.15, 0.24},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.175, 0.47},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.2, 0.78},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.225, 1.21},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.25, 1.85},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.275, 2.62},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.3, 3.69},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.325, 5.07},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.35, 7.95},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.375, 13.73},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.4, 23.55},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.425, 37.14},
-                {-5, 0.53, 4.78, 3.75, 3.15, 0.45, 55.87},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.125, 0.01},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.15, 0.16},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.175, 0.39},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.2, 0.73},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.225, 1.24},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.25, 1.96},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.275, 3.04},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.3, 4.46},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.325, 6.31},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.35, 8.68},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.375, 12.39},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.4, 20.14},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.425, 31.77},
-                {-2.3, 0.6, 5.1, 4.17, 3.51, 0.45, 47.13},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.125, 0.04},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.15, 0.17},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.175, 0.36},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.2, 0.64},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.225, 1.02},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.25, 1.62},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.275, 2.63},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.3, 4.15},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.325, 6},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.35, 8.47},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.375, 12.27},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.4, 19.59},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.425, 30.48},
-                {-2.3, 0.6, 4.34, 4.23, 2.73, 0.45, 46.66}
-        };
-
-        // Convert matrix into a list of row vectors
-        exampleSet = new ArrayList<>(matrix.length);
-        for (int i = 0; i < matrix.length; i++) {
-            Vector rowi = new DenseVector(7);
-            for (int j = 0; j < matrix[i].length; j++) {
-                rowi.set(j, matrix[i][j]);
-            }
-            exampleSet.add(rowi);
-        }
+        this.gatherReceiver = gatherReceiver;
+        this.maxEpochs = maxEpochs;
+        this.tolerance = tolerance;
+        this.lossTolerance = lossTolerance;
+        this.dimension = dimension;
+        this.intercept = intercept;
+        this.standardize = standardize;
+        this.inputFormat = inputFormat;
+        this.featureMoments = featureMoments;
+        this.checkpointInterval = checkpointInterval;
+        this.checkpointSeconds = checkpointSeconds;
+        this.resume = resume;
+        this.checkpoints = checkpoints;
+        this.closer = closer;
+        this.syncMode = syncMode;
+        this.staleness = staleness;
+        this.serverAddress = serverAddress;
+        this.groupSize = groupSize;
+        this.precision = precision;
+        this.report = report;
+        this.metrics = metrics;
+        this.tracer = tracer;
     }
 
     /**
-     * Computes AX'
+     * Runs broadcast/reduce rounds: every round broadcasts the current theta,
+     * each ComputeTask runs one local epoch over its own partition and the
+     * averaged model comes back through the reduce. An empty vector is
+     * broadcast at the end to release the ComputeTasks.
+     * <p/>
+     * With standardization, the feature moments of every partition are
+     * gathered and combined first, and the resulting scaling is broadcast
+     * ahead of the first theta. The model is reported in the original units.
      */
     @Override
     public byte[] call(byte[] memento) throws Exception {
-        // Scatter the matrix exampleSet
-        logger.log(Level.INFO, "Scattering Data");
-        System.out.print("Scattering Data\n");
-        scatterSender.send(exampleSet);
-        logger.log(Level.INFO, "Finished Scattering Data");
-        System.out.print( "Finished Scattering Data\n");
-        Vector result = reduceReceiver.reduce();
+        closer.register(Thread.currentThread());
+        theta = ModelMessage.zeros(ModelMessage.modelSize(dimension, intercept));
+        int epoch = 0;
+        double rmse = Double.NaN;
+        Vector broadcast = theta;
+        final StoppingRule stopping = new StoppingRule(maxEpochs, tolerance, lossTolerance);
+        if (resume) {
+            DataInputStream in = checkpoints.openLatest();
+            if (in != null) {
+                try {
+                    int size = in.readInt();
+                    if (size != theta.size()) {
+                        throw new IllegalArgumentException("The latest checkpoint holds a model of " + size
+                                + " values rather than " + theta.size() + "; is it of another job?");
+                    }
+                    epoch = in.readInt();
+                    rmse = in.readDouble();
+                    for (int i = 0; i < theta.size(); i++) {
+                        theta.set(i, in.readDouble());
+                    }
+                } finally {
+                    in.close();
+                }
+                broadcast = ModelMessage.stamped(theta, epoch);
+                stopping.resume(rmse);
+                logger.log(Level.INFO, "Resuming at epoch " + epoch + " with RMSE " + rmse);
+            } else {
+                logger.log(Level.WARNING, "No checkpoint to resume from, starting over");
+            }
+        } else {
+            // A group rebuilt before our first checkpoint must start over as well
+            checkpoints.clear();
+        }
+
+        metrics.set("epoch", epoch);
+
+        FeatureScaling scaling = null;
+        // The time spent in the rounds and the examples trained on in them
+        long roundNanos = 0;
+        long trainNanos = 0;
+        double examples = 0;
+        int rounds = 0;
+        ParameterServer server = null;
+        try {
+            if (standardize) {
+                Vector moments = featureMoments.apply(gatherReceiver.receive());
+                scaling = FeatureScaling.fromMoments(moments, !"libsvm".equals(inputFormat));
+                broadcastSender.send(scaling.toVector());
+            }
+
+            if (ParameterServer.SSP.equals(syncMode)) {
+                double[] initial = new double[theta.size()];
+                for (int i = 0; i < initial.length; i++) {
+                    initial[i] = theta.get(i);
+                }
+                int port = Integer.parseInt(serverAddress.substring(serverAddress.lastIndexOf(':') + 1));
+                server = new ParameterServer(port, groupSize, staleness, initial, epoch,
+                        ParameterServer.codec(precision, false, dimension, intercept, metrics), metrics);
+            }
+
+            long lastCheckpoint = System.currentTimeMillis();
+            final long trainStart = System.nanoTime();
+            while (epoch < maxEpochs) {
+                final long roundStart = System.nanoTime();
+                Vector message;
+                if (server != null) {
+                    message = server.awaitClock(epoch + 1);
+                    metrics.time(TaskMetrics.Timer.REDUCE, roundStart);
+                } else {
+                    broadcastSender.send(broadcast);
+                    long sent = metrics.time(TaskMetrics.Timer.BROADCAST, roundStart);
+                    message = reduceReceiver.reduce();
+                    metrics.time(TaskMetrics.Timer.REDUCE, sent);
+                }
+                roundNanos += System.nanoTime() - roundStart;
+                examples += ModelMessage.weight(message);
+                ++rounds;
+                Vector result = ModelMessage.theta(message);
+                ++epoch;
+                double change = distance(theta, result);
+                rmse = Math.sqrt(ModelMessage.loss(message));
+                theta = result;
+                metrics.set("epoch", epoch);
+                metrics.set("rmse", scaling == null ? rmse : rmse * scaling.getLabelScale());
+                metrics.set("change", change);
+                logger.log(Level.INFO, "Epoch " + epoch + ": change of theta " + change + ", RMSE " + rmse);
+                if (tracer.sample(Level.FINE)) {
+                    tracer.trace("round", "epoch", epoch, "change", change, "rmse", rmse);
+                }
+                // The loss is that of the models during the epoch, so it trails theta by one round
+                if (stopping.update(change, rmse)) {
+                    break;
+                }
+
+                broadcast = theta;
+                long now = System.currentTimeMillis();
+                if (epoch < maxEpochs && checkpointDue(epoch, now - lastCheckpoint) && checkpoint(epoch, rmse)) {
+                    lastCheckpoint = now;
+                    broadcast = ModelMessage.stamped(theta, epoch);
+                }
+            }
+            trainNanos = System.nanoTime() - trainStart;
+
+            if (server != null) {
+                server.finish(FINISH_TIMEOUT_MILLIS);
+            } else {
+                // An empty model tells the ComputeTasks that training is over
+                broadcastSender.send(new DenseVector(0));
+            }
+        } catch (Exception e) {
+            if (!closer.isClosed()) {
+                throw e;
+            }
+            // The driver is rebuilding the group, which resumes from the
+            // latest model. Clear the interrupt so that the checkpoint
+            // can be written.
+            Thread.interrupted();
+            logger.log(Level.INFO, "Closed by the driver after epoch " + epoch);
+            if (epoch > 0) {
+                checkpoint(epoch, rmse);
+            }
+            return null;
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+            tracer.close();
+        }
+
         // Accumulate the result
-        String resStr = resultString(result);
+        String resStr = resultString(theta, epoch, stopping.getReason(), rmse, scaling)
+                + "Timings:\n" + metrics.summary();
+        double roundSeconds = roundNanos / 1e9;
+        report.write("epochs", epoch, "rounds", rounds, "examples", (long) examples,
+                "trainSeconds", trainNanos / 1e9,
+                "secondsPerEpoch", rounds == 0 ? 0.0 : roundSeconds / rounds,
+                "examplesPerSecond", roundSeconds == 0 ? 0.0 : examples / roundSeconds,
+                "converged", stopping.isConverged(),
+                "rmse", scaling == null ? rmse : rmse * scaling.getLabelScale());
         return resStr.getBytes();
     }
 
+    private boolean checkpointDue(int epoch, long millisSinceCheckpoint) {
+        return checkpointInterval > 0 && epoch % checkpointInterval == 0
+                || checkpointSeconds > 0 && millisSinceCheckpoint >= checkpointSeconds * 1000L;
+    }
+
+    /**
+     * Checkpoints theta after the given epoch. A failed checkpoint is logged
+     * rather than failing the training.
+     *
+     * @return true if the checkpoint was committed
+     */
+    private boolean checkpoint(int epoch, double rmse) throws InterruptedException {
+        try {
+            DataOutputStream out = checkpoints.create();
+            out.writeInt(theta.size());
+            out.writeInt(epoch);
+            out.writeDouble(rmse);
+            for (int i = 0; i < theta.size(); i++) {
+                out.writeDouble(theta.get(i));
+            }
+            checkpoints.commit(out, epoch);
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not checkpoint epoch " + epoch, e);
+            return false;
+        }
+    }
+
+    /**
+     * L2 distance between two models of the same size
+     */
+    private static double distance(Vector a, Vector b) {
+        double sum = 0;
+        for (int i = 0; i < a.size(); i++) {
+            double diff = a.get(i) - b.get(i);
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+
     /**
      * Construct the display string and send it to the driver
      *
-     * @param result = AX'
-     * @return exampleSet string indicating the matrices being multiplied and the result
+     * @param result     the final theta
+     * @param epochs     the number of rounds that were run
+     * @param stopReason why training stopped
+     * @param rmse       the training RMSE of the last round
+     * @param scaling    the standardization of the data, or null
+     * @return exampleSet string indicating the learned weights
      */
-    private String resultString(Vector result) {
+    private String resultString(Vector result, int epochs, String stopReason, double rmse,
+                                FeatureScaling scaling) {
         StringBuilder sb = new StringBuilder();
+        sb.append("Epochs: " + epochs + "\n");
+        sb.append("Stopped: " + stopReason + "\n");
 
-        double[] res = new double[result.size()];
-        for (int i = 0; i < result.size(); i++) {
+        double[] res;
+        if (scaling != null) {
+            // Back to the original units
+            res = scaling.weights(result);
+            sb.append("RMSE: " + rmse * scaling.getLabelScale() + "\n");
+            sb.append("Intercept: " + scaling.intercept(result) + "\n");
+        } else {
+            res = new double[dimension];
+            for (int i = 0; i < dimension; i++) {
                 res[i] = result.get(i);
+            }
+            sb.append("RMSE: " + rmse + "\n");
+            if (intercept) {
+                sb.append("Intercept: " + result.get(dimension) + "\n");
+            }
         }
 
-        for (int i = 0; i < 6; i++) {
+        for (int i = 0; i < res.length; i++) {
             sb.append("Theta " + i + ": " + res[i] + "\n");
         }
 
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import java.util.Arrays;
+
+/**
+ * Compact store for the examples of one dense partition. The features of all
+ * rows live in one contiguous row-major array and the labels in a separate
+ * array, so the gradient loop walks primitive memory instead of one heap
+ * object per row.
+ */
+public final class DensePartitionStore implements PartitionStore {
+
+    /**
+     * The number of features of every row
+     */
+    private final int dimension;
+
+    /**
+     * The number of rows stored
+     */
+    private final int numRows;
+
+    /**
+     * Row-major features, row r occupies [r * dimension, (r + 1) * dimension)
+     */
+    private final double[] features;
+
+    /**
+     * The label of every row
+     */
+    private final double[] labels;
+
+    private DensePartitionStore(int dimension, int numRows, double[] features, double[] labels) {
+        this.dimension = dimension;
+        this.numRows = numRows;
+        this.features = features;
+        this.labels = labels;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return numRows == 0;
+    }
+
+    /**
+     * @return the row-major feature array, not a copy
+     */
+    public double[] getFeatures() {
+        return features;
+    }
+
+    @Override
+    public double[] getLabels() {
+        return labels;
+    }
+
+    @Override
+    public void standardize(double[] mean, double[] scale, double labelMean, double labelScale) {
+        for (int row = 0, offset = 0; row < numRows; row++, offset += dimension) {
+            for (int i = 0; i < dimension; i++) {
+                features[offset + i] = (features[offset + i] - mean[i]) / scale[i];
+            }
+            labels[row] = (labels[row] - labelMean) / labelScale;
+        }
+    }
+
+    /**
+     * Accumulates rows into growing primitive arrays. The arrays are trimmed
+     * to their exact size when the store is built.
+     */
+    public static final class Builder {
+
+        private static final int INITIAL_ROWS = 1024;
+
+        /**
+         * Caps the first allocation of wide partitions
+         */
+        private static final int INITIAL_VALUES = 1 << 20;
+
+        private final int dimension;
+        private double[] features;
+        private double[] labels;
+        private int numRows = 0;
+
+        public Builder(int dimension) {
+            this.dimension = dimension;
+            final int initialRows = Math.max(1, Math.min(INITIAL_ROWS, INITIAL_VALUES / Math.max(1, dimension)));
+            this.features = new double[initialRows * dimension];
+            this.labels = new double[initialRows];
+        }
+
+        public int getDimension() {
+            return dimension;
+        }
+
+        /**
+         * Appends one row
+         *
+         * @param row   the features, at least dimension values are read
+         * @param label the label of the row
+         */
+        public Builder addRow(double[] row, double label) {
+            if (numRows == labels.length) {
+                int capacity = labels.length * 2;
+                labels = Arrays.copyOf(labels, capacity);
+                features = Arrays.copyOf(features, capacity * dimension);
+            }
+            System.arraycopy(row, 0, features, numRows * dimension, dimension);
+            labels[numRows] = label;
+            ++numRows;
+            return this;
+        }
+
+        public DensePartitionStore build() {
+            return new DensePartitionStore(dimension, numRows,
+                    Arrays.copyOf(features, numRows * dimension),
+                    Arrays.copyOf(labels, numRows));
+        }
+    }
+}
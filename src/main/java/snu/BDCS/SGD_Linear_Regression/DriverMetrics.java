@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The latest {@link TaskMetrics} of every task, as they arrive with the
+ * heartbeats, and what they tell about the whole job: the epoch and loss of
+ * the controller, the bytes all the tasks sent and received, and how far
+ * the slowest ComputeTask trails the fastest one, in the time of its last
+ * local epoch and in epochs.
+ * <p/>
+ * The driver drops the metrics of a task once it completed or failed, so
+ * that the tasks of a rebuilt group or of the next run are not compared
+ * with the ones that are gone.
+ */
+public final class DriverMetrics {
+
+    private static final String CONTROLLER = "ControllerTask";
+
+    private static final String COMPUTE_TIME = "computeMillis";
+
+    /**
+     * The fields of the latest message of every task, by task id
+     */
+    private final Map<String, Map<String, String>> tasks = new TreeMap<>();
+
+    /**
+     * When the latest message of every task arrived
+     */
+    private final Map<String, Long> arrivals = new HashMap<>();
+
+    @Inject
+    public DriverMetrics() {
+    }
+
+    public synchronized void onMessage(String taskId, byte[] message) {
+        tasks.put(taskId, TaskMetrics.parse(new String(message, StandardCharsets.UTF_8)));
+        arrivals.put(taskId, System.currentTimeMillis());
+    }
+
+    /**
+     * Drops the metrics of a task that completed or failed
+     */
+    public synchronized void remove(String taskId) {
+        tasks.remove(taskId);
+        arrivals.remove(taskId);
+    }
+
+    /**
+     * @return the metrics as a JSON object
+     */
+    public synchronized String toJson() {
+        final long now = System.currentTimeMillis();
+        final StringBuilder sb = new StringBuilder(256 + 256 * tasks.size());
+        final Map<String, String> controller = tasks.get(CONTROLLER);
+        sb.append('{');
+        for (String key : new String[]{"epoch", "rmse", "change", "broadcastMillis", "reduceMillis"}) {
+            field(sb, key, controller == null ? null : controller.get(key));
+        }
+
+        long sent = 0;
+        long received = 0;
+        String slowest = null;
+        double slowestMillis = Double.NaN;
+        double fastestMillis = Double.NaN;
+        int minEpoch = Integer.MAX_VALUE;
+        int maxEpoch = Integer.MIN_VALUE;
+        for (Map.Entry<String, Map<String, String>> task : tasks.entrySet()) {
+            final Map<String, String> fields = task.getValue();
+            sent += Long.parseLong(fields.get(TaskMetrics.SENT));
+            received += Long.parseLong(fields.get(TaskMetrics.RECEIVED));
+            if (CONTROLLER.equals(task.getKey())) {
+                continue;
+            }
+            if (fields.containsKey("epoch")) {
+                final int epoch = Integer.parseInt(fields.get("epoch"));
+                minEpoch = Math.min(minEpoch, epoch);
+                maxEpoch = Math.max(maxEpoch, epoch);
+            }
+            if (fields.containsKey(COMPUTE_TIME)) {
+                final double millis = Double.parseDouble(fields.get(COMPUTE_TIME));
+                if (slowest == null || millis > slowestMillis) {
+                    slowest = task.getKey();
+                    slowestMillis = millis;
+                }
+                if (Double.isNaN(fastestMillis) || millis < fastestMillis) {
+                    fastestMillis = millis;
+                }
+            }
+        }
+        field(sb, TaskMetrics.SENT, String.valueOf(sent));
+        field(sb, TaskMetrics.RECEIVED, String.valueOf(received));
+
+        sb.append("\"stragglers\":{");
+        field(sb, "slowestTask", slowest);
+        field(sb, "slowestComputeMillis", String.valueOf(slowestMillis));
+        field(sb, "fastestComputeMillis", String.valueOf(fastestMillis));
+        field(sb, "spreadMillis", String.valueOf(slowestMillis - fastestMillis));
+        field(sb, "epochSpread", minEpoch > maxEpoch ? null : String.valueOf(maxEpoch - minEpoch));
+        close(sb);
+        sb.append(',');
+
+        sb.append("\"tasks\":{");
+        for (Map.Entry<String, Map<String, String>> task : tasks.entrySet()) {
+            sb.append('"').append(task.getKey()).append("\":{");
+            field(sb, "ageMillis", String.valueOf(now - arrivals.get(task.getKey())));
+            for (Map.Entry<String, String> metric : task.getValue().entrySet()) {
+                field(sb, metric.getKey(), metric.getValue());
+            }
+            close(sb);
+            sb.append(',');
+        }
+        close(sb);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Appends "key":value, with numbers and booleans as they are, other
+     * values quoted and missing or non-finite values as null
+     */
+    private static void field(StringBuilder sb, String key, String value) {
+        sb.append('"').append(key).append("\":");
+        if (value == null) {
+            sb.append("null");
+        } else if ("true".equals(value) || "false".equals(value)) {
+            sb.append(value);
+        } else {
+            try {
+                final double number = Double.parseDouble(value);
+                sb.append(Double.isNaN(number) || Double.isInfinite(number) ? "null" : value);
+            } catch (NumberFormatException e) {
+                sb.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+        }
+        sb.append(',');
+    }
+
+    /**
+     * Closes the object, replacing the separator after its last field
+     */
+    private static void close(StringBuilder sb) {
+        if (sb.charAt(sb.length() - 1) == ',') {
+            sb.setLength(sb.length() - 1);
+        }
+        sb.append('}');
+    }
+}
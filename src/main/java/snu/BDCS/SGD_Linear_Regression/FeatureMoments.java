@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import com.microsoft.reef.io.network.group.operators.Reduce;
+
+import javax.inject.Inject;
+
+/**
+ * Reduce function that combines the feature moments of several partitions
+ * into the moments of their union.
+ * <p/>
+ * A moments vector holds, for a partition of n examples, the mean of every
+ * feature, the sum of the squared deviations from that mean (M2) of every
+ * feature, the mean and M2 of the label, and n. The moments of two parts
+ * are combined exactly with the pairwise update of Chan et al., so every
+ * partition is read once and no sums of squares are formed.
+ */
+public class FeatureMoments implements Reduce.ReduceFunction<Vector> {
+
+    @Inject
+    public FeatureMoments() {
+    }
+
+    /**
+     * @return the moments vector of the examples of the partition
+     */
+    public static Vector of(PartitionStore partition) {
+        final int dimension = partition.getDimension();
+        final int numRows = partition.getNumRows();
+        final double[] mean = new double[dimension];
+        final double[] m2 = new double[dimension];
+        if (partition instanceof SparsePartitionStore) {
+            sparseMoments((SparsePartitionStore) partition, mean, m2);
+        } else {
+            denseMoments((DensePartitionStore) partition, mean, m2);
+        }
+        final double[] labels = partition.getLabels();
+        double labelMean = 0.0;
+        for (int row = 0; row < numRows; row++) {
+            labelMean += labels[row];
+        }
+        labelMean = numRows == 0 ? 0.0 : labelMean / numRows;
+        double labelM2 = 0.0;
+        for (int row = 0; row < numRows; row++) {
+            final double deviation = labels[row] - labelMean;
+            labelM2 += deviation * deviation;
+        }
+
+        final Vector moments = new DenseVector(2 * dimension + 3);
+        for (int i = 0; i < dimension; i++) {
+            moments.set(i, mean[i]);
+            moments.set(dimension + i, m2[i]);
+        }
+        moments.set(2 * dimension, labelMean);
+        moments.set(2 * dimension + 1, labelM2);
+        moments.set(2 * dimension + 2, numRows);
+        return moments;
+    }
+
+    private static void denseMoments(DensePartitionStore partition, double[] mean, double[] m2) {
+        final int dimension = partition.getDimension();
+        final int numRows = partition.getNumRows();
+        final double[] features = partition.getFeatures();
+        if (numRows == 0) {
+            return;
+        }
+        for (int offset = 0; offset < numRows * dimension; offset += dimension) {
+            for (int i = 0; i < dimension; i++) {
+                mean[i] += features[offset + i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            mean[i] /= numRows;
+        }
+        for (int offset = 0; offset < numRows * dimension; offset += dimension) {
+            for (int i = 0; i < dimension; i++) {
+                final double deviation = features[offset + i] - mean[i];
+                m2[i] += deviation * deviation;
+            }
+        }
+    }
+
+    /**
+     * Only the non-zeros are read: a feature stored in count rows deviates
+     * by -mean in the other numRows - count rows
+     */
+    private static void sparseMoments(SparsePartitionStore partition, double[] mean, double[] m2) {
+        final int dimension = partition.getDimension();
+        final int numRows = partition.getNumRows();
+        final int[] indices = partition.getIndices();
+        final double[] values = partition.getValues();
+        if (numRows == 0) {
+            return;
+        }
+        final int[] counts = new int[dimension];
+        for (int k = 0; k < indices.length; k++) {
+            mean[indices[k]] += values[k];
+            counts[indices[k]]++;
+        }
+        for (int i = 0; i < dimension; i++) {
+            mean[i] /= numRows;
+        }
+        for (int k = 0; k < indices.length; k++) {
+            final double deviation = values[k] - mean[indices[k]];
+            m2[indices[k]] += deviation * deviation;
+        }
+        for (int i = 0; i < dimension; i++) {
+            m2[i] += (numRows - counts[i]) * mean[i] * mean[i];
+        }
+    }
+
+    @Override
+    public Vector apply(Iterable<Vector> elements) {
+        Vector result = null;
+        for (Vector element : elements) {
+            if (result == null) {
+                result = new DenseVector(element.size());
+                for (int i = 0; i < element.size(); i++) {
+                    result.set(i, element.get(i));
+                }
+            } else {
+                merge(result, element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Folds the moments of other into result
+     */
+    private static void merge(Vector result, Vector other) {
+        final int count = result.size() - 1;
+        final double n1 = result.get(count);
+        final double n2 = other.get(count);
+        final double n = n1 + n2;
+        if (n2 == 0) {
+            return;
+        }
+        // Means and M2s alternate as features then label
+        final int values = (result.size() - 1) / 2;
+        final int dimension = values - 1;
+        for (int v = 0; v < values; v++) {
+            final int meanIndex = v < dimension ? v : 2 * dimension;
+            final int m2Index = v < dimension ? dimension + v : 2 * dimension + 1;
+            final double delta = other.get(meanIndex) - result.get(meanIndex);
+            result.set(meanIndex, result.get(meanIndex) + delta * n2 / n);
+            result.set(m2Index, result.get(m2Index) + other.get(m2Index) + delta * delta * n1 * n2 / n);
+        }
+        result.set(count, n);
+    }
+}
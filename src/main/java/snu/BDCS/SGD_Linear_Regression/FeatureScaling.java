@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+
+import java.util.Arrays;
+
+/**
+ * The standardization of the features and the label computed from the
+ * moments of the whole training set. It is broadcast to the ComputeTasks,
+ * which apply it to their partitions, as the feature means, the feature
+ * scales, the label mean and the label scale.
+ * <p/>
+ * A model trained on standardized data predicts (y - labelMean) / labelScale
+ * from (x_i - mean_i) / scale_i, so in the original units its weights are
+ * theta_i * labelScale / scale_i and its intercept is
+ * labelMean + labelScale * bias - sum_i theta_i * labelScale * mean_i / scale_i,
+ * where the bias is 0 for models without one.
+ */
+public final class FeatureScaling {
+
+    private final double[] mean;
+    private final double[] scale;
+    private final double labelMean;
+    private final double labelScale;
+
+    private FeatureScaling(double[] mean, double[] scale, double labelMean, double labelScale) {
+        this.mean = mean;
+        this.scale = scale;
+        this.labelMean = labelMean;
+        this.labelScale = labelScale;
+    }
+
+    /**
+     * @param moments the moments of the whole training set, see {@link FeatureMoments}
+     * @param center  false to only scale the features, as sparse rows must stay sparse
+     */
+    public static FeatureScaling fromMoments(Vector moments, boolean center) {
+        final int dimension = (moments.size() - 3) / 2;
+        final double count = moments.get(2 * dimension + 2);
+        final double[] mean = new double[dimension];
+        final double[] scale = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            final double featureMean = moments.get(i);
+            mean[i] = center ? featureMean : 0.0;
+            // Without centering the scale is the root mean square
+            final double m2 = moments.get(dimension + i)
+                    + (center ? 0.0 : count * featureMean * featureMean);
+            scale[i] = scaleOf(m2, count);
+        }
+        return new FeatureScaling(mean, scale, moments.get(2 * dimension),
+                scaleOf(moments.get(2 * dimension + 1), count));
+    }
+
+    /**
+     * @return the standard deviation, or 1 for constant values
+     */
+    private static double scaleOf(double m2, double count) {
+        final double deviation = count == 0 ? 0.0 : Math.sqrt(m2 / count);
+        return deviation > 0.0 ? deviation : 1.0;
+    }
+
+    /**
+     * @return the scaling sent as {@link #toVector()}
+     */
+    public static FeatureScaling fromVector(Vector vector) {
+        final int dimension = (vector.size() - 2) / 2;
+        final double[] mean = new double[dimension];
+        final double[] scale = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            mean[i] = vector.get(i);
+            scale[i] = vector.get(dimension + i);
+        }
+        return new FeatureScaling(mean, scale, vector.get(2 * dimension), vector.get(2 * dimension + 1));
+    }
+
+    public Vector toVector() {
+        final int dimension = mean.length;
+        final Vector vector = new DenseVector(2 * dimension + 2);
+        for (int i = 0; i < dimension; i++) {
+            vector.set(i, mean[i]);
+            vector.set(dimension + i, scale[i]);
+        }
+        vector.set(2 * dimension, labelMean);
+        vector.set(2 * dimension + 1, labelScale);
+        return vector;
+    }
+
+    /**
+     * @return the scaling that leaves the values as they are
+     */
+    public static FeatureScaling identity(int dimension) {
+        final double[] scale = new double[dimension];
+        Arrays.fill(scale, 1.0);
+        return new FeatureScaling(new double[dimension], scale, 0.0, 1.0);
+    }
+
+    /**
+     * @return the scaling that takes values standardized by the given
+     * scaling to values standardized by this one: a value x standardized by
+     * the given one was (x_0 - m) / s, so it becomes
+     * (x - (m' - m) / s) / (s' / s) under a mean m' and a scale s'
+     */
+    public FeatureScaling relativeTo(FeatureScaling applied) {
+        final double[] relativeMean = new double[mean.length];
+        final double[] relativeScale = new double[mean.length];
+        for (int i = 0; i < mean.length; i++) {
+            relativeMean[i] = (mean[i] - applied.mean[i]) / applied.scale[i];
+            relativeScale[i] = scale[i] / applied.scale[i];
+        }
+        return new FeatureScaling(relativeMean, relativeScale,
+                (labelMean - applied.labelMean) / applied.labelScale, labelScale / applied.labelScale);
+    }
+
+    /**
+     * @return true if applying it changes nothing
+     */
+    public boolean isIdentity() {
+        for (int i = 0; i < mean.length; i++) {
+            if (mean[i] != 0.0 || scale[i] != 1.0) {
+                return false;
+            }
+        }
+        return labelMean == 0.0 && labelScale == 1.0;
+    }
+
+    /**
+     * Standardizes the partition in place
+     */
+    public void apply(PartitionStore partition) {
+        partition.standardize(mean, scale, labelMean, labelScale);
+    }
+
+    /**
+     * @return the weights of a standardized model in the original units
+     */
+    public double[] weights(Vector theta) {
+        final double[] weights = new double[mean.length];
+        for (int i = 0; i < mean.length; i++) {
+            weights[i] = theta.get(i) * labelScale / scale[i];
+        }
+        return weights;
+    }
+
+    /**
+     * @return the intercept of a standardized model in the original units,
+     * including the part implied by the centering
+     */
+    public double intercept(Vector theta) {
+        final double[] weights = weights(theta);
+        double intercept = labelMean;
+        if (theta.size() > mean.length) {
+            intercept += labelScale * theta.get(mean.length);
+        }
+        for (int i = 0; i < mean.length; i++) {
+            intercept -= weights[i] * mean[i];
+        }
+        return intercept;
+    }
+
+    /**
+     * @return the factor from standardized label units to original ones
+     */
+    public double getLabelScale() {
+        return labelScale;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import java.util.Locale;
+
+/**
+ * A histogram of durations in nanoseconds with log-linear buckets: four
+ * buckets per power of two, so that a percentile is read within 25% of the
+ * recorded value. The buckets are allocated up front and recording only
+ * increments counters, so it can run in the training loops.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Buckets per power of two, as a number of bits
+     */
+    private static final int SUB_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+    private long last = 0;
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        ++counts[bucket(nanos)];
+        ++count;
+        total += nanos;
+        max = Math.max(max, nanos);
+        last = nanos;
+    }
+
+    /**
+     * @return the bucket of the duration, which is the duration itself below
+     * {@link #SUB_BUCKETS}
+     */
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        final int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest duration of the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exponent = bucket / SUB_BUCKETS;
+        final long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the latest recorded duration
+     */
+    public synchronized long getLast() {
+        return last;
+    }
+
+    /**
+     * @param quantile in [0, 1]
+     * @return an upper bound of the duration at the quantile, 0 if nothing was recorded
+     */
+    public synchronized long percentile(double quantile) {
+        final long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBound(b), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return "count=.. total=..ms mean=..ms p50=..ms p99=..ms max=..ms"
+     */
+    public synchronized String summary() {
+        return "count=" + count
+                + " total=" + millis(total) + "ms"
+                + " mean=" + millis(count == 0 ? 0 : total / count) + "ms"
+                + " p50=" + millis(percentile(0.5)) + "ms"
+                + " p99=" + millis(percentile(0.99)) + "ms"
+                + " max=" + millis(max) + "ms";
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+
+/**
+ * The learning rate as a function of the number of steps taken. The base
+ * rate is either kept constant, multiplied by the decay rate every
+ * decaySteps steps ("step"), or divided by 1 + decayRate * step / decaySteps
+ * ("inverse"). During the first warmupSteps steps it is also ramped up
+ * linearly from a small fraction of itself.
+ */
+public final class LearningRateSchedule {
+
+    public static final String CONSTANT = "constant";
+    public static final String STEP = "step";
+    public static final String INVERSE = "inverse";
+
+    private final double baseRate;
+    private final String schedule;
+    private final double decayRate;
+    private final int decaySteps;
+    private final int warmupSteps;
+
+    @Inject
+    public LearningRateSchedule(@Parameter(LinearSGD_Driver.Parameters.LearningRate.class) double baseRate,
+                                @Parameter(LinearSGD_Driver.Parameters.Schedule.class) String schedule,
+                                @Parameter(LinearSGD_Driver.Parameters.DecayRate.class) double decayRate,
+                                @Parameter(LinearSGD_Driver.Parameters.DecaySteps.class) int decaySteps,
+                                @Parameter(LinearSGD_Driver.Parameters.WarmupSteps.class) int warmupSteps) {
+        if (!CONSTANT.equals(schedule) && !STEP.equals(schedule) && !INVERSE.equals(schedule)) {
+            throw new IllegalArgumentException("Unknown learning rate schedule: " + schedule);
+        }
+        if (decaySteps < 1) {
+            throw new IllegalArgumentException("Decay steps must be positive: " + decaySteps);
+        }
+        this.baseRate = baseRate;
+        this.schedule = schedule;
+        this.decayRate = decayRate;
+        this.decaySteps = decaySteps;
+        this.warmupSteps = warmupSteps;
+    }
+
+    /**
+     * @param step the number of steps taken so far
+     * @return the learning rate of the next step
+     */
+    public double rate(long step) {
+        double rate = baseRate;
+        if (STEP.equals(schedule)) {
+            rate *= Math.pow(decayRate, step / decaySteps);
+        } else if (INVERSE.equals(schedule)) {
+            rate /= 1.0 + decayRate * step / decaySteps;
+        }
+        if (step < warmupSteps) {
+            rate *= (step + 1.0) / warmupSteps;
+        }
+        return rate;
+    }
+}
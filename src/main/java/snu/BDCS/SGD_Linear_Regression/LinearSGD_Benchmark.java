@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.client.LauncherStatus;
+import com.microsoft.tang.Configuration;
+import com.microsoft.tang.Injector;
+import com.microsoft.tang.JavaConfigurationBuilder;
+import com.microsoft.tang.Tang;
+import com.microsoft.tang.annotations.Name;
+import com.microsoft.tang.annotations.NamedParameter;
+import com.microsoft.tang.exceptions.BindException;
+import com.microsoft.tang.exceptions.InjectionException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the whole job, driver, controller and ComputeTasks, on the local
+ * runtime over a synthetic training set and appends its throughput to a
+ * results file, one CSV line per run, so that scaling curves can be
+ * measured on one machine by varying the number of splits and the size of
+ * the data.
+ * <p/>
+ * The training set is a noisy linear function of uniform random features,
+ * generated once per size, format and density and reused by later runs.
+ * The training options are the ones of {@link LinearSGD_REEF}. The results
+ * come from the reports the tasks write at the end of their run
+ * ({@link TaskReport}): the examples per second and seconds per epoch of
+ * the training rounds, the training time, which is the time to converge
+ * when the run converged, and the peak heap of the controller and of the
+ * largest ComputeTask.
+ */
+public final class LinearSGD_Benchmark {
+
+    private static final Logger LOG = Logger.getLogger(LinearSGD_Benchmark.class.getName());
+
+    private static final long SEED = 20140101L;
+
+    private static final String HEADER = "time,status,workers,rows,dimension,format,density,epochs,"
+            + "examples_per_second,seconds_per_epoch,train_seconds,converged,rmse,"
+            + "controller_peak_heap_mb,compute_peak_heap_mb,wall_seconds";
+
+    @NamedParameter(doc = "Number of examples of the synthetic training set",
+            short_name = "rows", default_value = "100000")
+    public static final class Rows implements Name<Integer> {
+    }
+
+    @NamedParameter(doc = "Fraction of the features of an example that are not zero",
+            short_name = "density", default_value = "1.0")
+    public static final class Density implements Name<Double> {
+    }
+
+    @NamedParameter(doc = "Standard deviation of the noise added to the labels",
+            short_name = "noise", default_value = "0.1")
+    public static final class Noise implements Name<Double> {
+    }
+
+    @NamedParameter(doc = "Directory of the training sets, the task reports and the results",
+            short_name = "benchmarkDir", default_value = "/tmp/linear-sgd-benchmark")
+    public static final class WorkDir implements Name<String> {
+    }
+
+    /**
+     * Generates the training set unless a previous run did
+     *
+     * @return the training set file
+     */
+    static File trainingSet(final File dir, final int rows, final int dimension, final String format,
+                            final double density, final double noise) throws IOException {
+        final File file = new File(dir, "data-" + rows + "x" + dimension + "-" + format + "-" + density
+                + "-" + noise + ".txt");
+        if (file.exists()) {
+            return file;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        LOG.log(Level.INFO, "Generating {0}", file);
+        final Random random = new Random(SEED);
+        final double[] truth = new double[dimension + 1];
+        for (int i = 0; i < truth.length; i++) {
+            truth[i] = 2 * random.nextDouble() - 1;
+        }
+        final int nonZeros = (int) Math.max(1, Math.min(dimension, Math.round(density * dimension)));
+        final File partial = new File(dir, file.getName() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(partial), StandardCharsets.UTF_8), 1 << 20)) {
+            final double[] row = new double[dimension];
+            final StringBuilder sb = new StringBuilder();
+            for (int r = 0; r < rows; r++) {
+                // The bias is the weight past the last feature
+                double label = truth[dimension] + noise * random.nextGaussian();
+                sb.setLength(0);
+                if ("libsvm".equals(format)) {
+                    for (int k = 0; k < nonZeros; k++) {
+                        final int index = random.nextInt(dimension);
+                        final double value = random.nextDouble();
+                        label += truth[index] * value;
+                        sb.append(' ').append(index + 1).append(':').append(value);
+                    }
+                    sb.insert(0, label);
+                } else if ("csv".equals(format)) {
+                    for (int i = 0; i < dimension; i++) {
+                        row[i] = random.nextDouble() < density ? random.nextDouble() : 0.0;
+                        label += truth[i] * row[i];
+                        sb.append(row[i]).append(',');
+                    }
+                    sb.append(label);
+                } else {
+                    throw new IllegalArgumentException("Unknown input format: " + format);
+                }
+                out.write(sb.append('\n').toString());
+            }
+        }
+        Files.move(partial.toPath(), file.toPath());
+        return file;
+    }
+
+    /**
+     * @return the fields of the reports in the directory by task id
+     */
+    static Map<String, Map<String, String>> readReports(final File dir) throws IOException {
+        final Map<String, Map<String, String>> reports = new HashMap<>();
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return reports;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(TaskReport.SUFFIX)) {
+                continue;
+            }
+            final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty()) {
+                continue;
+            }
+            final Map<String, String> fields = TaskMetrics.parse(lines.get(0));
+            reports.put(fields.get("task"), fields);
+        }
+        return reports;
+    }
+
+    private static String megabytes(final Map<String, String> report) {
+        return report == null ? "" : String.valueOf(Long.parseLong(report.get("peakHeap")) >> 20);
+    }
+
+    private static String field(final Map<String, String> report, final String key) {
+        return report == null || !report.containsKey(key) ? "" : report.get(key);
+    }
+
+    /**
+     * Generates the training set, runs the job and appends its results
+     *
+     * @param args the options of {@link LinearSGD_REEF} and of this class
+     */
+    public static void main(final String[] args) throws BindException, InjectionException, IOException {
+        final Tang tang = Tang.Factory.getTang();
+        final JavaConfigurationBuilder cb = tang.newConfigurationBuilder();
+        LinearSGD_REEF.commandLine(cb)
+                .registerShortNameOfClass(Rows.class)
+                .registerShortNameOfClass(Density.class)
+                .registerShortNameOfClass(Noise.class)
+                .registerShortNameOfClass(WorkDir.class)
+                .processCommandLine(args);
+        final Configuration commandLineConf = cb.build();
+        final Injector injector = tang.newInjector(commandLineConf);
+
+        final int rows = injector.getNamedInstance(Rows.class);
+        final double density = injector.getNamedInstance(Density.class);
+        final double noise = injector.getNamedInstance(Noise.class);
+        final File workDir = new File(injector.getNamedInstance(WorkDir.class)).getAbsoluteFile();
+        final int numSplits = injector.getNamedInstance(LinearSGD_REEF.NumSplits.class);
+        final int timeout = injector.getNamedInstance(LinearSGD_REEF.TimeOut.class) * 60 * 1000;
+        final int dimension = injector.getNamedInstance(LinearSGD_Driver.Parameters.Dimension.class);
+        final String format = injector.getNamedInstance(LinearSGD_Driver.Parameters.InputFormat.class);
+        if (rows < 1 || dimension < 1) {
+            throw new IllegalArgumentException("The training set needs rows and features: "
+                    + rows + "x" + dimension);
+        }
+        if (density <= 0 || density > 1) {
+            throw new IllegalArgumentException("Density must be in (0, 1]: " + density);
+        }
+
+        final File data = trainingSet(new File(workDir, "data"), rows, dimension, format, density, noise);
+
+        // Every run reports to a directory of its own, unless told otherwise
+        final JavaConfigurationBuilder jobConf = tang.newConfigurationBuilder(commandLineConf);
+        String metricsPath = injector.getNamedInstance(LinearSGD_Driver.Parameters.MetricsPath.class);
+        if (metricsPath.isEmpty()) {
+            metricsPath = new File(workDir, "run-" + System.currentTimeMillis()).getPath();
+            jobConf.bindNamedParameter(LinearSGD_Driver.Parameters.MetricsPath.class, metricsPath);
+        }
+        final File reportDir = new File(metricsPath).getAbsoluteFile();
+        final File[] stale = reportDir.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                if (file.getName().endsWith(TaskReport.SUFFIX) && !file.delete()) {
+                    throw new IOException("Cannot delete the earlier report " + file);
+                }
+            }
+        }
+
+        LOG.log(Level.INFO, "Training on {0} with {1} ComputeTasks", new Object[]{data, numSplits});
+        final long start = System.nanoTime();
+        final LauncherStatus status = LinearSGD_REEF.run(LinearSGD_REEF.localRuntime(numSplits), jobConf.build(),
+                data.getPath(), numSplits, timeout);
+        final double wallSeconds = (System.nanoTime() - start) / 1e9;
+        LOG.log(Level.INFO, "REEF job completed: {0}", status);
+
+        final Map<String, Map<String, String>> reports = readReports(reportDir);
+        final Map<String, String> controller = reports.remove("ControllerTask");
+        Map<String, String> largest = null;
+        for (Map<String, String> report : reports.values()) {
+            if (largest == null || Long.parseLong(report.get("peakHeap")) > Long.parseLong(largest.get("peakHeap"))) {
+                largest = report;
+            }
+        }
+        if (controller == null) {
+            LOG.log(Level.WARNING, "The controller wrote no report to {0}", reportDir);
+        }
+
+        final String line = System.currentTimeMillis() + "," + status + "," + numSplits + "," + rows + ","
+                + dimension + "," + format + "," + density + ","
+                + field(controller, "epochs") + ","
+                + field(controller, "examplesPerSecond") + ","
+                + field(controller, "secondsPerEpoch") + ","
+                + field(controller, "trainSeconds") + ","
+                + field(controller, "converged") + ","
+                + field(controller, "rmse") + ","
+                + megabytes(controller) + ","
+                + megabytes(largest) + ","
+                + wallSeconds;
+        final File results = new File(workDir, "results.csv");
+        final boolean fresh = !results.exists();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(results, true), StandardCharsets.UTF_8)) {
+            if (fresh) {
+                out.write(HEADER + "\n");
+            }
+            out.write(line + "\n");
+        }
+        LOG.log(Level.INFO, "{0}\n{1}", new Object[]{HEADER, line});
+    }
+}
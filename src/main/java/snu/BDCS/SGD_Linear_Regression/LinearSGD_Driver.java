@@ -17,31 +17,44 @@ package snu.BDCS.SGD_Linear_Regression;
 
 import com.microsoft.reef.driver.TaskSubmittable;
 import com.microsoft.reef.driver.context.ActiveContext;
+import com.microsoft.reef.driver.context.ClosedContext;
 import com.microsoft.reef.driver.context.ContextConfiguration;
-import com.microsoft.reef.driver.evaluator.AllocatedEvaluator;
-import com.microsoft.reef.driver.evaluator.EvaluatorRequest;
-import com.microsoft.reef.driver.evaluator.EvaluatorRequestor;
+import com.microsoft.reef.driver.context.ServiceConfiguration;
+import com.microsoft.reef.driver.evaluator.FailedEvaluator;
 import com.microsoft.reef.driver.task.CompletedTask;
+import com.microsoft.reef.driver.task.FailedTask;
 import com.microsoft.reef.driver.task.RunningTask;
 import com.microsoft.reef.driver.task.TaskConfiguration;
+import com.microsoft.reef.driver.task.TaskMessage;
 import com.microsoft.tang.Configuration;
+import com.microsoft.tang.JavaConfigurationBuilder;
+import com.microsoft.tang.Tang;
 import com.microsoft.tang.annotations.Name;
 import com.microsoft.tang.annotations.NamedParameter;
 import com.microsoft.tang.annotations.Parameter;
 import com.microsoft.tang.annotations.Unit;
+import com.microsoft.reef.io.data.loading.api.DataLoadingService;
 import com.microsoft.tang.exceptions.BindException;
 import com.microsoft.wake.EventHandler;
 import com.microsoft.wake.impl.BlockingEventHandler;
-import com.microsoft.wake.time.event.StartTime;
 
 import javax.inject.Inject;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The Driver code for the REEF Application
- * Road map : 1) LinearSGD_Driver -> 2) StartHandler -> 3) EvaluatorAllocatorHandler
+ * Road map : 1) LinearSGD_Driver -> 2) ActiveContextHandler -> 3) TaskSubmitter
+ * Evaluators are requested and given their input splits by the data loading
+ * service, one ComputeTask per loaded partition and one extra evaluator for
+ * the ControllerTask. Failed tasks and lost evaluators are handed to the
+ * TaskSubmitter, which rebuilds the group. The tasks run on a context stacked
+ * on every data loaded context, of which the {@link PartitionCache} keeps
+ * the parsed partition for the tasks of the rebuilt groups and of the next
+ * runs. The metrics the tasks send with
+ * their heartbeats are collected in the {@link DriverMetrics} served by
+ * {@link MetricsHttpHandler}.
  */
 @Unit
 public final class LinearSGD_Driver {
@@ -52,54 +65,329 @@ public final class LinearSGD_Driver {
 
     private static final int controllerTasks = 1;
 
-    private final AtomicInteger compTasksRunning = new AtomicInteger(0);
-
     private final TaskSubmitter taskSubmitter;
 
     private final BlockingEventHandler<ActiveContext> contextAccumulator;
 
-    private final EvaluatorRequestor requestor;
+    private final DriverMetrics metrics;
 
-    public static class Parameters {
-        @NamedParameter(default_value = "3", doc = "The number of compute tasks to spawn")
-        public static class ComputeTasks implements Name<Integer> {
-        }
+    private final DataLoadingService dataLoadingService;
 
+    public static class Parameters {
         @NamedParameter(default_value = "5678", doc = "Port on which Name Service should listen")
         public static class NameServicePort implements Name<Integer> {
         }
+
+        @NamedParameter(default_value = "100", short_name = "epochs",
+                doc = "The maximum number of broadcast/reduce rounds")
+        public static class MaxEpochs implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "1e-6", short_name = "tolerance",
+                doc = "Stop training once theta changes less than this (L2) in one round")
+        public static class Tolerance implements Name<Double> {
+        }
+
+        @NamedParameter(default_value = "0", short_name = "lossTolerance",
+                doc = "Stop training once the training RMSE improves by less than this fraction in one round, "
+                        + "or without converging once it rose for 5 rounds in a row; 0 disables both")
+        public static class LossTolerance implements Name<Double> {
+        }
+
+        @NamedParameter(default_value = "1", short_name = "batch",
+                doc = "The number of examples folded into one SGD update, 1 updates after every example")
+        public static class BatchSize implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "6", short_name = "dim",
+                doc = "The number of features, every input line holds this many values followed by the label")
+        public static class Dimension implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "csv", short_name = "format",
+                doc = "csv for dense comma separated lines ending with the label, "
+                        + "libsvm for sparse lines of the label followed by 1-based index:value pairs")
+        public static class InputFormat implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "false", short_name = "standardize",
+                doc = "Standardize the features and the label with the statistics of the whole training set "
+                        + "before training; sparse features are scaled but not centered")
+        public static class Standardize implements Name<Boolean> {
+        }
+
+        @NamedParameter(default_value = "true", short_name = "intercept",
+                doc = "Fit a bias, the weight of a constant 1 feature; false for data that is already centered")
+        public static class FitIntercept implements Name<Boolean> {
+        }
+
+        @NamedParameter(default_value = "0", short_name = "checkpointEpochs",
+                doc = "Checkpoint the model and optimizer state every this many epochs, 0 disables it")
+        public static class CheckpointInterval implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "0", short_name = "checkpointSeconds",
+                doc = "Checkpoint the model and optimizer state once this many seconds passed since the last one, "
+                        + "0 disables it")
+        public static class CheckpointSeconds implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "/tmp/linear-sgd-checkpoints", short_name = "checkpointPath",
+                doc = "The local directory of the checkpoints, one per job")
+        public static class CheckpointPath implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "", short_name = "job",
+                doc = "The name of the job, whose checkpoints are kept apart from those of other jobs; "
+                        + "derived from the input path if empty")
+        public static class JobName implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "false", short_name = "resume",
+                doc = "Resume training from the latest checkpoint in the checkpoint directory")
+        public static class Resume implements Name<Boolean> {
+        }
+
+        @NamedParameter(default_value = "bsp", short_name = "sync",
+                doc = "bsp for averaging theta over all the ComputeTasks every epoch, "
+                        + "ssp for ComputeTasks pushing their updates to the controller without waiting for each other")
+        public static class SyncMode implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "2", short_name = "staleness",
+                doc = "In ssp mode, the most epochs a ComputeTask may be ahead of the slowest one")
+        public static class Staleness implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "", doc = "The host:port of the controller's parameter server, "
+                + "set by the driver")
+        public static class ParameterServerAddress implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "0", doc = "The number of ComputeTasks of the group, set by the driver")
+        public static class GroupSize implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "3", short_name = "maxFailures",
+                doc = "The number of failed tasks or lost evaluators to recover from before giving up")
+        public static class MaxFailures implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "1", short_name = "runs",
+                doc = "The number of training runs, every run after the first starts over on the evaluators "
+                        + "and the partitions the previous one left")
+        public static class Runs implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "1", doc = "The run the task belongs to, from 1, set by the driver")
+        public static class Run implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "", short_name = "metricsPath",
+                doc = "Directory every task writes the report of its run to, none if empty")
+        public static class MetricsPath implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "OFF", short_name = "trace",
+                doc = "java.util.logging level name of the task tracing, OFF disables it")
+        public static class TraceLevel implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "0.01", short_name = "traceSample",
+                doc = "The fraction of the enabled trace events that is written")
+        public static class TraceSampleRate implements Name<Double> {
+        }
+
+        @NamedParameter(default_value = "float64", short_name = "precision",
+                doc = "Precision of the exchanged vectors: float64, float32, int16 or int8")
+        public static class ExchangePrecision implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "false", short_name = "errorFeedback",
+                doc = "Carry the rounding error of int16/int8 updates over to the next update; "
+                        + "the models of the broadcast and reduce are always sent without it")
+        public static class ErrorFeedback implements Name<Boolean> {
+        }
+
+        @NamedParameter(default_value = "8", short_name = "fanIn",
+                doc = "The most ComputeTasks that send their partial averages to the same task in the reduce tree")
+        public static class FanIn implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "1", short_name = "threads",
+                doc = "The number of threads training on the partition of every ComputeTask")
+        public static class NumThreads implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "hogwild", short_name = "parallelMode",
+                doc = "hogwild for threads updating one theta without locking, "
+                        + "replica for a theta per thread averaged after every epoch")
+        public static class ParallelMode implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "sgd", short_name = "optimizer",
+                doc = "The update rule: sgd, momentum, adagrad, rmsprop or adam")
+        public static class OptimizerType implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "0.001", short_name = "rate",
+                doc = "The base learning rate")
+        public static class LearningRate implements Name<Double> {
+        }
+
+        @NamedParameter(default_value = "constant", short_name = "schedule",
+                doc = "constant, step for multiplying the rate by decayRate every decaySteps steps, "
+                        + "inverse for dividing it by 1 + decayRate * step / decaySteps")
+        public static class Schedule implements Name<String> {
+        }
+
+        @NamedParameter(default_value = "0.5", short_name = "decayRate",
+                doc = "The decay of the step and inverse schedules")
+        public static class DecayRate implements Name<Double> {
+        }
+
+        @NamedParameter(default_value = "1000", short_name = "decaySteps",
+                doc = "The number of steps over which the rate decays once")
+        public static class DecaySteps implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "0", short_name = "warmup",
+                doc = "The number of steps over which the rate is ramped up linearly")
+        public static class WarmupSteps implements Name<Integer> {
+        }
+
+        @NamedParameter(default_value = "0.9", short_name = "beta1",
+                doc = "The momentum, and the decay of Adam's average of the gradients")
+        public static class Beta1 implements Name<Double> {
+        }
+
+        @NamedParameter(default_value = "0.999", short_name = "beta2",
+                doc = "The decay of the RMSProp and Adam averages of the squared gradients")
+        public static class Beta2 implements Name<Double> {
+        }
+
+        @NamedParameter(default_value = "1e-8", short_name = "epsilon",
+                doc = "Added to the denominators of AdaGrad, RMSProp and Adam")
+        public static class Epsilon implements Name<Double> {
+        }
+
+        @NamedParameter(default_value = "false", short_name = "nesterov",
+                doc = "Whether the momentum optimizer uses Nesterov momentum")
+        public static class Nesterov implements Name<Boolean> {
+        }
     }
 
     /**
      * Job driver constructor - instantiated via TANG.
      *
-     * @param requestor evaluator requestor object used to create new evaluator containers.
+     * @param dataLoadingService the service that loaded one input split per compute evaluator.
+     * @param metrics            the live metrics of the tasks, shared with the HTTP handler.
      */
     @Inject
     public LinearSGD_Driver(
-            final EvaluatorRequestor requestor,
-            final @Parameter(Parameters.ComputeTasks.class) int computeTasks,
-            final @Parameter(Parameters.NameServicePort.class) int nameServicePort) {
+            final DataLoadingService dataLoadingService,
+            final @Parameter(Parameters.NameServicePort.class) int nameServicePort,
+            final @Parameter(Parameters.MaxEpochs.class) int maxEpochs,
+            final @Parameter(Parameters.Tolerance.class) double tolerance,
+            final @Parameter(Parameters.LossTolerance.class) double lossTolerance,
+            final @Parameter(Parameters.BatchSize.class) int batchSize,
+            final @Parameter(Parameters.Dimension.class) int dimension,
+            final @Parameter(Parameters.InputFormat.class) String inputFormat,
+            final @Parameter(Parameters.Standardize.class) boolean standardize,
+            final @Parameter(Parameters.FitIntercept.class) boolean intercept,
+            final @Parameter(Parameters.CheckpointInterval.class) int checkpointInterval,
+            final @Parameter(Parameters.CheckpointSeconds.class) int checkpointSeconds,
+            final @Parameter(Parameters.CheckpointPath.class) String checkpointPath,
+            final @Parameter(Parameters.JobName.class) String jobName,
+            final @Parameter(Parameters.Resume.class) boolean resume,
+            final @Parameter(Parameters.MaxFailures.class) int maxFailures,
+            final @Parameter(Parameters.Runs.class) int runs,
+            final @Parameter(Parameters.SyncMode.class) String syncMode,
+            final @Parameter(Parameters.Staleness.class) int staleness,
+            final @Parameter(Parameters.MetricsPath.class) String metricsPath,
+            final @Parameter(Parameters.TraceLevel.class) String traceLevel,
+            final @Parameter(Parameters.TraceSampleRate.class) double traceSampleRate,
+            final @Parameter(Parameters.ExchangePrecision.class) String exchangePrecision,
+            final @Parameter(Parameters.ErrorFeedback.class) boolean errorFeedback,
+            final @Parameter(Parameters.FanIn.class) int fanIn,
+            final @Parameter(Parameters.NumThreads.class) int numThreads,
+            final @Parameter(Parameters.ParallelMode.class) String parallelMode,
+            final OptimizerConfiguration optimizerConfiguration,
+            final DriverMetrics metrics) {
 
         LOG.log(Level.INFO, "Instantiated 'LinearSGD_Driver'");
         System.out.print("Instantiated 'LinearSGD_Driver'\n");
-        this.requestor = requestor;
-        this.computeTasks = computeTasks;
-        this.taskSubmitter = new TaskSubmitter(this.computeTasks, nameServicePort);
+        if (!ParameterServer.BSP.equals(syncMode) && !ParameterServer.SSP.equals(syncMode)) {
+            throw new IllegalArgumentException("Unknown synchronization mode: " + syncMode);
+        }
+        this.computeTasks = dataLoadingService.getNumberOfPartitions();
+        this.dataLoadingService = dataLoadingService;
+        this.metrics = metrics;
+        if (resume) {
+            LOG.log(Level.INFO, "Resuming from the latest checkpoint of {0} in {1}",
+                    new Object[]{jobName, checkpointPath});
+        }
+        this.taskSubmitter = new TaskSubmitter(this.computeTasks, nameServicePort,
+                getTrainingConfiguration(maxEpochs, tolerance, lossTolerance, batchSize,
+                        dimension, inputFormat, standardize, intercept,
+                        checkpointInterval, checkpointSeconds, checkpointPath, jobName, syncMode, staleness,
+                        metricsPath, traceLevel, traceSampleRate,
+                        exchangePrecision, errorFeedback, numThreads, parallelMode,
+                        optimizerConfiguration.toConfiguration()),
+                dataLoadingService, exchangePrecision, fanIn, resume, maxFailures, runs);
         this.contextAccumulator = new BlockingEventHandler<ActiveContext>(
                 this.computeTasks + this.controllerTasks, this.taskSubmitter);
     }
 
-    final class AllocatedEvaluatorHandler implements EventHandler<AllocatedEvaluator> {
-        @Override
-        public final void onNext(final AllocatedEvaluator eval) {
-            LOG.log(Level.INFO, "Received an AllocatedEvaluator. Submitting it.");
-            System.out.print("Received an AllocatedEvaluator. Submitting it.\n");
-            try {
-                eval.submitContext(ContextConfiguration.CONF.set(ContextConfiguration.IDENTIFIER, "SGD_Linear").build());
-            } catch (final BindException e) {
-                throw new RuntimeException(e);
-            }
+    /**
+     * The training parameters handed down to every task. Whether to resume
+     * is bound per controller by the TaskSubmitter.
+     */
+    private static Configuration getTrainingConfiguration(final int maxEpochs, final double tolerance,
+                                                          final double lossTolerance,
+                                                          final int batchSize, final int dimension,
+                                                          final String inputFormat, final boolean standardize,
+                                                          final boolean intercept,
+                                                          final int checkpointInterval,
+                                                          final int checkpointSeconds,
+                                                          final String checkpointPath,
+                                                          final String jobName,
+                                                          final String syncMode,
+                                                          final int staleness,
+                                                          final String metricsPath,
+                                                          final String traceLevel,
+                                                          final double traceSampleRate,
+                                                          final String exchangePrecision,
+                                                          final boolean errorFeedback,
+                                                          final int numThreads,
+                                                          final String parallelMode,
+                                                          final Configuration optimizerConf) {
+        try {
+            final JavaConfigurationBuilder b = Tang.Factory.getTang().newConfigurationBuilder(optimizerConf);
+            b.bindNamedParameter(Parameters.MaxEpochs.class, String.valueOf(maxEpochs));
+            b.bindNamedParameter(Parameters.Tolerance.class, String.valueOf(tolerance));
+            b.bindNamedParameter(Parameters.LossTolerance.class, String.valueOf(lossTolerance));
+            b.bindNamedParameter(Parameters.BatchSize.class, String.valueOf(batchSize));
+            b.bindNamedParameter(Parameters.Dimension.class, String.valueOf(dimension));
+            b.bindNamedParameter(Parameters.InputFormat.class, inputFormat);
+            b.bindNamedParameter(Parameters.Standardize.class, String.valueOf(standardize));
+            b.bindNamedParameter(Parameters.FitIntercept.class, String.valueOf(intercept));
+            b.bindNamedParameter(Parameters.CheckpointInterval.class, String.valueOf(checkpointInterval));
+            b.bindNamedParameter(Parameters.CheckpointSeconds.class, String.valueOf(checkpointSeconds));
+            b.bindNamedParameter(Parameters.CheckpointPath.class, checkpointPath);
+            b.bindNamedParameter(Parameters.JobName.class, jobName);
+            b.bindNamedParameter(Parameters.SyncMode.class, syncMode);
+            b.bindNamedParameter(Parameters.Staleness.class, String.valueOf(staleness));
+            b.bindNamedParameter(Parameters.MetricsPath.class, metricsPath);
+            b.bindNamedParameter(Parameters.TraceLevel.class, traceLevel);
+            b.bindNamedParameter(Parameters.TraceSampleRate.class, String.valueOf(traceSampleRate));
+            b.bindNamedParameter(Parameters.ExchangePrecision.class, exchangePrecision);
+            b.bindNamedParameter(Parameters.ErrorFeedback.class, String.valueOf(errorFeedback));
+            b.bindNamedParameter(Parameters.NumThreads.class, String.valueOf(numThreads));
+            b.bindNamedParameter(Parameters.ParallelMode.class, parallelMode);
+            return b.build();
+        } catch (final BindException e) {
+            throw new RuntimeException("Unable to bind the training parameters", e);
         }
     }
 
@@ -108,10 +396,7 @@ public final class LinearSGD_Driver {
         public final void onNext(final RunningTask task) {
             LOG.log(Level.INFO, "Task \"{0}\" is running!", task.getId());
             System.out.print("Task " + task.getId() + " is running!\n");
-            if (compTasksRunning.incrementAndGet() == computeTasks) {
-                // All compute tasks are running - launch controller task
-                taskSubmitter.submitControlTask();
-            }
+            taskSubmitter.taskRunning(task);
         }
     }
 
@@ -121,11 +406,23 @@ public final class LinearSGD_Driver {
         public final void onNext(final CompletedTask completed) {
             LOG.log(Level.INFO, "Task {0} is done.", completed.getId());
             System.out.print("Task " + completed.getId() + " is done.\n");
-            if (taskSubmitter.controllerCompleted(completed.getId())) {
-                // Get results from controller
+            metrics.remove(completed.getId());
+            if (taskSubmitter.controllerCompleted(completed.getId()) && completed.get() != null) {
+                // Get results from controller: the number of epochs, why
+                // training stopped, the final RMSE and theta
+                final String result = new String(completed.get());
+                LOG.log(Level.INFO, "Training result:\n{0}", result);
                 System.out.println("****************** RESULT ******************");
-                System.out.println(new String(completed.get()));
+                System.out.println(result);
                 System.out.println("********************************************");
+            } else if (completed.get() != null) {
+                // The ComputeTasks return where their time went
+                LOG.log(Level.INFO, "Timings of {0}:\n{1}",
+                        new Object[]{completed.getId(), new String(completed.get(), StandardCharsets.UTF_8)});
+            }
+            if (!taskSubmitter.taskCompleted(completed.getId())) {
+                // The context is kept for the rebuilt group or the next run
+                return;
             }
             final ActiveContext context = completed.getActiveContext();
             LOG.log(Level.INFO, "Releasing Context {0}.", context.getId());
@@ -134,34 +431,68 @@ public final class LinearSGD_Driver {
         }
     }
 
-    final class ActiveContextHandler implements EventHandler<ActiveContext> {
+    final class FailedTaskHandler implements EventHandler<FailedTask> {
         @Override
-        public void onNext(final ActiveContext activeContext) {
-            LOG.log(Level.INFO, "Received a RunningEvaluator with ID: {0}", activeContext.getId());
-            System.out.print("Received a RunningEvaluator with ID: " + activeContext.getId() + ".\n");
-            contextAccumulator.onNext(activeContext);
+        public void onNext(final FailedTask failed) {
+            LOG.log(Level.WARNING, "Task " + failed.getId() + " failed", failed.asError());
+            metrics.remove(failed.getId());
+            taskSubmitter.taskFailed(failed);
         }
     }
 
-    /**
-     * Handles the StartTime event: Request as single Evaluator.
-     */
-    public final class StartHandler implements EventHandler<StartTime> {
+    final class FailedEvaluatorHandler implements EventHandler<FailedEvaluator> {
+        @Override
+        public void onNext(final FailedEvaluator failed) {
+            LOG.log(Level.WARNING, "Evaluator " + failed.getId() + " failed", failed.getEvaluatorException());
+            if (failed.getFailedTask().isPresent()) {
+                metrics.remove(failed.getFailedTask().get().getId());
+            }
+            taskSubmitter.evaluatorFailed(failed);
+        }
+    }
+
+    final class ClosedContextHandler implements EventHandler<ClosedContext> {
+        @Override
+        public void onNext(final ClosedContext closed) {
+            // The data loaded context below the partition cache holds on to the evaluator
+            if (closed.getId().startsWith(PartitionCache.CONTEXT_PREFIX)) {
+                closed.getParentContext().close();
+            }
+        }
+    }
+
+    final class TaskMessageHandler implements EventHandler<TaskMessage> {
         @Override
-        public void onNext(final StartTime startTime) {
-            LOG.log(Level.INFO, "StartTime: {0}", startTime);
-            System.out.print("StartTime: " + startTime + "\n");
-            LinearSGD_Driver.this.requestor.submit(
-                    EvaluatorRequest.newBuilder()
-                            .setNumber(computeTasks + controllerTasks)
-                            .setMemory(128)
-                            .setNumberOfCores(4)
-                            .build());
+        public void onNext(final TaskMessage message) {
+            metrics.onMessage(message.getId(), message.get());
         }
+    }
 
+    final class ActiveContextHandler implements EventHandler<ActiveContext> {
         @Override
-        public String toString() {
-            return "HelloDriver.StartHandler";
+        public void onNext(final ActiveContext activeContext) {
+            LOG.log(Level.INFO, "Received a RunningEvaluator with ID: {0}", activeContext.getId());
+            System.out.print("Received a RunningEvaluator with ID: " + activeContext.getId() + ".\n");
+            if (dataLoadingService.isDataLoadedContext(activeContext)) {
+                // The tasks run on a context of their own on top, which
+                // caches the partition they parse from the input split
+                try {
+                    activeContext.submitContextAndService(ContextConfiguration.CONF
+                                    .set(ContextConfiguration.IDENTIFIER,
+                                            PartitionCache.CONTEXT_PREFIX + activeContext.getId())
+                                    .build(),
+                            ServiceConfiguration.CONF
+                                    .set(ServiceConfiguration.SERVICES, PartitionCache.class)
+                                    .build());
+                } catch (final BindException e) {
+                    throw new RuntimeException("Unable to configure the partition cache context", e);
+                }
+                return;
+            }
+            // Contexts that replace lost ones join the running job directly
+            if (!taskSubmitter.contextActive(activeContext)) {
+                contextAccumulator.onNext(activeContext);
+            }
         }
     }
 
@@ -23,6 +23,7 @@ import com.microsoft.reef.io.data.loading.api.DataLoadingRequestBuilder;
 import com.microsoft.reef.runtime.local.client.LocalRuntimeConfiguration;
 import com.microsoft.reef.runtime.yarn.client.YarnClientConfiguration;
 import com.microsoft.reef.util.EnvironmentUtils;
+import com.microsoft.reef.webserver.HttpHandlerConfiguration;
 import com.microsoft.tang.Configuration;
 import com.microsoft.tang.Injector;
 import com.microsoft.tang.JavaConfigurationBuilder;
@@ -33,7 +34,6 @@ import com.microsoft.tang.exceptions.BindException;
 import com.microsoft.tang.exceptions.InjectionException;
 import com.microsoft.tang.formats.CommandLine;
 import org.apache.hadoop.mapred.TextInputFormat;
-import sun.security.krb5.Config;
 
 import java.io.IOException;
 import java.util.logging.Level;
@@ -47,9 +47,8 @@ public final class LinearSGD_REEF {
     private static final Logger LOG = Logger.getLogger(LinearSGD_REEF.class.getName());
 
     private static final int NUM_LOCAL_THREADS = 4;
-    private static final int TIMEOUT = 1 * 60 * 1000;
-    private static final int NUM_COMPUTE_EVALUATORS = 4;
-    private static final int NUM_SPLITS = 4;
+    private static final int NUM_CONTROLLER_EVALUATORS = 1;
+    private static final int EVALUATOR_MEMORY_MB = 1024;
 
     /**
      * Command line parameter = true to run locally, or false to run on YARN.
@@ -68,25 +67,125 @@ public final class LinearSGD_REEF {
     public static final class InputDir implements Name<String> {
     }
 
+    @NamedParameter(doc = "Number of input splits, one ComputeTask is run per split",
+            short_name = "splits", default_value = "3")
+    public static final class NumSplits implements Name<Integer> {
+    }
+
     /**
      * @return the configuration of the LinearSGD_REEF driver.
      */
 
-    public static LauncherStatus run(final Configuration runtimeConf, final int timeOut)
+    public static LauncherStatus run(final Configuration runtimeConf, final Configuration commandLineConf,
+                                     final String inputDir, final int numSplits, final int timeOut)
             throws BindException, InjectionException {
-        final Configuration driverConfiguration = DriverConfiguration.CONF
-                .set(DriverConfiguration.DRIVER_IDENTIFIER, "SGD_Linear")
-                .set(DriverConfiguration.GLOBAL_LIBRARIES, EnvironmentUtils.getClassLocation(LinearSGD_Driver.class))
-                .set(DriverConfiguration.ON_DRIVER_STARTED, LinearSGD_Driver.StartHandler.class)
-                .set(DriverConfiguration.ON_EVALUATOR_ALLOCATED, LinearSGD_Driver.AllocatedEvaluatorHandler.class)
-                .set(DriverConfiguration.ON_TASK_RUNNING, LinearSGD_Driver.RunningTaskHandler.class)
-                .set(DriverConfiguration.ON_TASK_COMPLETED, LinearSGD_Driver.CompletedTaskHandler.class)
-                .set(DriverConfiguration.ON_CONTEXT_ACTIVE, LinearSGD_Driver.ActiveContextHandler.class)
+        // The controller gets an evaluator of its own next to the data loading ones
+        final EvaluatorRequest controllerRequest = EvaluatorRequest.newBuilder()
+                .setNumber(NUM_CONTROLLER_EVALUATORS)
+                .setMemory(EVALUATOR_MEMORY_MB)
+                .setNumberOfCores(4)
+                .build();
+
+        final Configuration dataLoadConfiguration = new DataLoadingRequestBuilder()
+                .setMemoryMB(EVALUATOR_MEMORY_MB)
+                .setInputFormatClass(TextInputFormat.class)
+                .setInputPath(inputDir)
+                .setNumberOfDesiredSplits(numSplits)
+                .setComputeRequest(controllerRequest)
+                .setDriverConfigurationModule(DriverConfiguration.CONF
+                        .set(DriverConfiguration.DRIVER_IDENTIFIER, "SGD_Linear")
+                        .set(DriverConfiguration.GLOBAL_LIBRARIES, EnvironmentUtils.getClassLocation(LinearSGD_Driver.class))
+                        .set(DriverConfiguration.ON_TASK_RUNNING, LinearSGD_Driver.RunningTaskHandler.class)
+                        .set(DriverConfiguration.ON_TASK_COMPLETED, LinearSGD_Driver.CompletedTaskHandler.class)
+                        .set(DriverConfiguration.ON_TASK_FAILED, LinearSGD_Driver.FailedTaskHandler.class)
+                        .set(DriverConfiguration.ON_TASK_MESSAGE, LinearSGD_Driver.TaskMessageHandler.class)
+                        .set(DriverConfiguration.ON_EVALUATOR_FAILED, LinearSGD_Driver.FailedEvaluatorHandler.class)
+                        .set(DriverConfiguration.ON_CONTEXT_ACTIVE, LinearSGD_Driver.ActiveContextHandler.class)
+                        .set(DriverConfiguration.ON_CONTEXT_CLOSED, LinearSGD_Driver.ClosedContextHandler.class))
                 .build();
+        // The driver serves the metrics of the tasks over HTTP
+        final Configuration httpConfiguration = HttpHandlerConfiguration.CONF
+                .set(HttpHandlerConfiguration.HTTP_HANDLERS, MetricsHttpHandler.class)
+                .build();
+        // The training parameters given on the command line are read by the driver.
+        // Unless named, a job is named after its input, so that resuming finds
+        // the checkpoints of the earlier job over the same input only
+        final JavaConfigurationBuilder jobConfiguration = Tang.Factory.getTang()
+                .newConfigurationBuilder(commandLineConf);
+        if (Tang.Factory.getTang().newInjector(commandLineConf)
+                .getNamedInstance(LinearSGD_Driver.Parameters.JobName.class).isEmpty()) {
+            jobConfiguration.bindNamedParameter(LinearSGD_Driver.Parameters.JobName.class, jobName(inputDir));
+        }
+        final Configuration driverConfiguration = Tang.Factory.getTang()
+                .newConfigurationBuilder(dataLoadConfiguration, httpConfiguration, jobConfiguration.build()).build();
         // DriverLauncher launches Driver to run the application.
         return DriverLauncher.getLauncher(runtimeConf).run(driverConfiguration, timeOut);
     }
 
+    /**
+     * @return the input path with every run of characters other than
+     * letters, digits, '.', '_' and '-' replaced by '_'
+     */
+    static String jobName(final String inputDir) {
+        return inputDir.replaceAll("[^A-Za-z0-9._-]+", "_").replaceAll("^_+|_+$", "");
+    }
+
+    /**
+     * @return the command line of the job, to which the caller may add options of its own
+     */
+    static CommandLine commandLine(final JavaConfigurationBuilder cb) throws BindException {
+        return new CommandLine(cb)
+                .registerShortNameOfClass(Local.class)
+                .registerShortNameOfClass(TimeOut.class)
+                .registerShortNameOfClass(InputDir.class)
+                .registerShortNameOfClass(NumSplits.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.MaxEpochs.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Tolerance.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.LossTolerance.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.BatchSize.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Dimension.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.InputFormat.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Standardize.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.FitIntercept.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.CheckpointInterval.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.CheckpointSeconds.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.CheckpointPath.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.JobName.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Resume.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.MaxFailures.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Runs.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.SyncMode.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Staleness.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.MetricsPath.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.TraceLevel.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.TraceSampleRate.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.ExchangePrecision.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.ErrorFeedback.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.FanIn.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.NumThreads.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.ParallelMode.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.OptimizerType.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.LearningRate.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Schedule.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.DecayRate.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.DecaySteps.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.WarmupSteps.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Beta1.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Beta2.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Epsilon.class)
+                .registerShortNameOfClass(LinearSGD_Driver.Parameters.Nesterov.class);
+    }
+
+    /**
+     * @return the local runtime with a thread per evaluator, one per split plus the controller's
+     */
+    static Configuration localRuntime(final int numSplits) throws BindException {
+        return LocalRuntimeConfiguration.CONF
+                .set(LocalRuntimeConfiguration.NUMBER_OF_THREADS,
+                        Math.max(NUM_LOCAL_THREADS, numSplits + NUM_CONTROLLER_EVALUATORS))
+                .build();
+    }
+
     /**
      * Start REEF job. Runs method run().
      *
@@ -95,66 +194,35 @@ public final class LinearSGD_REEF {
      * @throws com.microsoft.tang.exceptions.InjectionException configuration error.
      */
     public static void main(final String[] args) throws BindException, InjectionException {
-        // TODO : build LocalRuntimeConfiguration
-
-        /*
         final Tang tang = Tang.Factory.getTang();
 
         final JavaConfigurationBuilder cb = tang.newConfigurationBuilder();
 
         try {
-            new CommandLine(cb)
-                    .registerShortNameOfClass(Local.class)
-                    .registerShortNameOfClass(TimeOut.class)
-                    .registerShortNameOfClass(LinearSGD_REEF.InputDir.class)
-                    .processCommandLine(args);
-
+            commandLine(cb).processCommandLine(args);
         } catch (final IOException ex) {
-            LOG.log(Level.SEVERE, "Configuration error: cannot load data", ex);
-            throw new RuntimeException("Configuration error: cannot load data", ex);
+            LOG.log(Level.SEVERE, "Configuration error: cannot parse the command line", ex);
+            throw new RuntimeException("Configuration error: cannot parse the command line", ex);
         }
 
-        final Injector injector = tang.newInjector(cb.build());
+        final Configuration commandLineConf = cb.build();
+        final Injector injector = tang.newInjector(commandLineConf);
 
         final boolean isLocal = injector.getNamedInstance(Local.class);
-        final int jobTimeout = injector.getNamedInstance(TimeOut.class);
-        final String inputDir = injector.getNamedInstance(LinearSGD_REEF.InputDir.class);
+        final int jobTimeout = injector.getNamedInstance(TimeOut.class) * 60 * 1000;
+        final String inputDir = injector.getNamedInstance(InputDir.class);
+        final int numSplits = injector.getNamedInstance(NumSplits.class);
 
         final Configuration runtimeConfiguration;
         if (isLocal) {
             LOG.log(Level.INFO, "Running on the local runtime");
-            runtimeConfiguration = LocalRuntimeConfiguration.CONF
-                .set(LocalRuntimeConfiguration.NUMBER_OF_THREADS, NUM_LOCAL_THREADS).build();
+            runtimeConfiguration = localRuntime(numSplits);
         } else {
             LOG.log(Level.INFO, "Running on YARN");
             runtimeConfiguration = YarnClientConfiguration.CONF.build();
         }
 
-        final EvaluatorRequest computeRequest = EvaluatorRequest.newBuilder()
-                .setNumber(NUM_COMPUTE_EVALUATORS)
-                .setMemory(1024)
-                .setNumberOfCores(4)
-                .build();
-
-        final Configuration dataLoadConfiguration = new DataLoadingRequestBuilder()
-                .setMemoryMB(1024)
-                .setInputFormatClass(TextInputFormat.class)
-                .setInputPath(inputDir)
-                .setNumberOfDesiredSplits(NUM_SPLITS)
-                .setComputeRequest(computeRequest)
-                .setDriverConfigurationModule(DriverConfiguration.CONF
-                        .set(DriverConfiguration.GLOBAL_LIBRARIES, EnvironmentUtils.getClassLocation(LinearSGD_Driver.class))
-                        .set(DriverConfiguration.ON_CONTEXT_ACTIVE, LinearSGD_Driver.ContextActiveHandler.class)
-                        .set(DriverConfiguration.ON_TASK_COMPLETED, LinearSGD_Driver.TaskCompletedHandler.class)
-                        .set(DriverConfiguration.DRIVER_IDENTIFIER, "DataLoadingREEF"))
-                .build();
-
-        final LauncherStatus status = run(runtimeConfiguration, JOB_TIMEOUT);
-        */
-        final Configuration runtimeConfiguration = LocalRuntimeConfiguration.CONF
-                .set(LocalRuntimeConfiguration.NUMBER_OF_THREADS, NUM_LOCAL_THREADS)
-                .build();
-        final LauncherStatus status = run(runtimeConfiguration, TIMEOUT);
+        final LauncherStatus status = run(runtimeConfiguration, commandLineConf, inputDir, numSplits, jobTimeout);
         LOG.log(Level.INFO, "REEF job completed: {0}", status);
     }
 }
\ No newline at end of file
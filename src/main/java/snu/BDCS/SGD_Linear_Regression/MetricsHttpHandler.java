@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.webserver.HttpHandler;
+import com.microsoft.reef.webserver.ParsedHttpRequest;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the {@link DriverMetrics} of the running job as JSON at /Metrics
+ * on the HTTP server of the driver.
+ */
+public final class MetricsHttpHandler implements HttpHandler {
+
+    private final DriverMetrics metrics;
+
+    private String uriSpecification = "Metrics";
+
+    @Inject
+    public MetricsHttpHandler(DriverMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getUriSpecification() {
+        return uriSpecification;
+    }
+
+    @Override
+    public void setUriSpecification(String uriSpecification) {
+        this.uriSpecification = uriSpecification;
+    }
+
+    @Override
+    public void onHttpRequest(ParsedHttpRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.getWriter().println(metrics.toJson());
+    }
+}
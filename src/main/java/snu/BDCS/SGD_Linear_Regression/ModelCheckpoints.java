@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.driver.task.TaskConfigurationOptions;
+import com.microsoft.reef.io.checkpoint.CheckpointID;
+import com.microsoft.reef.io.checkpoint.CheckpointReadChannel;
+import com.microsoft.reef.io.checkpoint.CheckpointService;
+import com.microsoft.reef.io.checkpoint.CheckpointWriteChannel;
+import com.microsoft.reef.io.checkpoint.RandomNameCNS;
+import com.microsoft.reef.io.checkpoint.fs.FSCheckpointID;
+import com.microsoft.reef.io.checkpoint.fs.FSCheckpointService;
+import com.microsoft.tang.annotations.Parameter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import javax.inject.Inject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The checkpoints of one task on the local disk, written through the
+ * reef-checkpoint {@link CheckpointService}, in a directory of the job
+ * within the checkpoint directory so that jobs do not resume from each
+ * other's checkpoints, and the runs after the first of a job in a directory
+ * of every run, so that a rebuilt group resumes from its own run. Only the latest checkpoint of the task is kept: a
+ * small "[task id].latest" file in the directory of the job names it and the epoch it was taken at, and is replaced
+ * atomically once the new checkpoint is committed, so a task that fails
+ * while writing leaves the previous checkpoint usable.
+ * <p/>
+ * The payload is whatever the task writes to the stream of {@link #create()};
+ * {@link #openLatest()} hands it back in the same order.
+ */
+public final class ModelCheckpoints {
+
+    private static final Logger LOG = Logger.getLogger(ModelCheckpoints.class.getName());
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String taskId;
+
+    private final String directory;
+
+    /**
+     * Created on the first use, so that tasks that never checkpoint never
+     * touch the disk
+     */
+    private CheckpointService service;
+
+    /**
+     * The channel of the checkpoint being written
+     */
+    private CheckpointWriteChannel pending;
+
+    @Inject
+    public ModelCheckpoints(@Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+                            @Parameter(LinearSGD_Driver.Parameters.CheckpointPath.class) String directory,
+                            @Parameter(LinearSGD_Driver.Parameters.JobName.class) String jobName,
+                            @Parameter(LinearSGD_Driver.Parameters.Run.class) int run) {
+        this.taskId = taskId;
+        // The first run is where a restarted job resumes from
+        this.directory = (run == 1 ? Paths.get(directory, jobName) : Paths.get(directory, jobName, "run-" + run))
+                .toString();
+    }
+
+    /**
+     * @return the stream to write the next checkpoint to, which is only
+     * kept once passed to {@link #commit(DataOutputStream, int)}
+     */
+    public DataOutputStream create() throws IOException, InterruptedException {
+        if (pending != null) {
+            // The previous checkpoint failed before its commit
+            service().abort(pending);
+        }
+        pending = service().create();
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(pending), BUFFER_SIZE));
+    }
+
+    /**
+     * Makes the checkpoint written to out the latest one and deletes the
+     * previous one
+     *
+     * @param epoch the number of epochs the checkpointed state was trained for
+     */
+    public void commit(DataOutputStream out, int epoch) throws IOException, InterruptedException {
+        out.flush();
+        final CheckpointID id = service().commit(pending);
+        pending = null;
+        final CheckpointID previous = latestId();
+
+        final java.nio.file.Path pointer = pointer();
+        final java.nio.file.Path temporary = pointer.resolveSibling(pointer.getFileName() + ".tmp");
+        Files.write(temporary, Arrays.asList(String.valueOf(epoch), ((FSCheckpointID) id).getPath().toString()),
+                StandardCharsets.UTF_8);
+        Files.move(temporary, pointer, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (previous != null && !service().delete(previous)) {
+            LOG.log(Level.WARNING, "Could not delete the previous checkpoint of {0}", taskId);
+        }
+        LOG.log(Level.INFO, "Checkpointed {0} at epoch {1}", new Object[]{taskId, epoch});
+    }
+
+    /**
+     * @return the epoch of the latest checkpoint, or -1 if there is none
+     */
+    public int latestEpoch() throws IOException {
+        final List<String> lines = readPointer();
+        return lines == null ? -1 : Integer.parseInt(lines.get(0).trim());
+    }
+
+    /**
+     * @return the latest checkpoint, or null if there is none
+     */
+    public DataInputStream openLatest() throws IOException, InterruptedException {
+        final CheckpointID id = latestId();
+        if (id == null) {
+            return null;
+        }
+        final CheckpointReadChannel channel = service().open(id);
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+    }
+
+    /**
+     * Drops the latest checkpoint, so that a task starting over is not
+     * resumed from the checkpoints of an earlier one
+     */
+    public void clear() throws IOException, InterruptedException {
+        final CheckpointID latest = latestId();
+        if (latest == null) {
+            return;
+        }
+        Files.delete(pointer());
+        if (!service().delete(latest)) {
+            LOG.log(Level.WARNING, "Could not delete the earlier checkpoint of {0}", taskId);
+        }
+    }
+
+    private CheckpointID latestId() throws IOException {
+        final List<String> lines = readPointer();
+        return lines == null ? null : new FSCheckpointID(new Path(lines.get(1).trim()));
+    }
+
+    private List<String> readPointer() throws IOException {
+        final java.nio.file.Path pointer = pointer();
+        if (!Files.exists(pointer)) {
+            return null;
+        }
+        final List<String> lines = Files.readAllLines(pointer, StandardCharsets.UTF_8);
+        if (lines.size() < 2) {
+            throw new IOException("Malformed checkpoint pointer " + pointer);
+        }
+        return lines;
+    }
+
+    private java.nio.file.Path pointer() {
+        return Paths.get(directory, taskId + ".latest");
+    }
+
+    private CheckpointService service() throws IOException {
+        if (service == null) {
+            Files.createDirectories(Paths.get(directory));
+            final FileSystem fs = FileSystem.getLocal(new Configuration());
+            service = new FSCheckpointService(fs, new Path(directory), new RandomNameCNS(taskId + "-"), (short) 1);
+        }
+        return service;
+    }
+}
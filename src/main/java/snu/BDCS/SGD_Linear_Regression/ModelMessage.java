@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+
+/**
+ * Layout of the vectors sent up the reduce: the theta values, including the
+ * bias when the model has an intercept, the mean
+ * squared training error of the epoch, and the weight of the partial
+ * average, which is the number of examples it was trained on. Every value
+ * but the weight is averaged, so partial averages of any part of the
+ * aggregation tree can be combined into the average over all of them.
+ * <p/>
+ * The vectors holding a model, theta whether stamped or not and the
+ * messages, are {@link Model}s, so that the codecs tell them from the other
+ * vectors, such as the feature moments and scaling, by their type rather
+ * than by their size.
+ */
+public final class ModelMessage {
+
+    /**
+     * The loss and the weight follow theta
+     */
+    private static final int TRAILER = 2;
+
+    private ModelMessage() {
+    }
+
+    /**
+     * A vector that starts with the theta values of a model
+     */
+    public static final class Model extends DenseVector {
+        public Model(int size) {
+            super(size);
+        }
+    }
+
+    /**
+     * @return a theta of zeros of the given number of values
+     */
+    public static Vector zeros(int modelSize) {
+        return new Model(modelSize);
+    }
+
+    /**
+     * @return true if the vector starts with the theta values of a model,
+     * rather than being for example the feature moments or scaling
+     */
+    public static boolean isModel(Vector vector) {
+        return vector instanceof Model;
+    }
+
+    /**
+     * @return a message holding a copy of theta, the loss and the weight
+     */
+    public static Vector of(double[] theta, double loss, double weight) {
+        Vector message = new Model(theta.length + TRAILER);
+        for (int i = 0; i < theta.length; i++) {
+            message.set(i, theta[i]);
+        }
+        message.set(theta.length, loss);
+        message.set(theta.length + 1, weight);
+        return message;
+    }
+
+    /**
+     * @return the number of theta values of a model of the given number of
+     * features, with the bias last when it has an intercept
+     */
+    public static int modelSize(int dimension, boolean intercept) {
+        return intercept ? dimension + 1 : dimension;
+    }
+
+    /**
+     * @return theta followed by the epoch it was reached at, broadcast by
+     * the controller when the ComputeTasks must checkpoint or restore their
+     * optimizer state for that epoch
+     */
+    public static Vector stamped(Vector theta, int epoch) {
+        Vector message = new Model(theta.size() + 1);
+        for (int i = 0; i < theta.size(); i++) {
+            message.set(i, theta.get(i));
+        }
+        message.set(theta.size(), epoch);
+        return message;
+    }
+
+    /**
+     * @return true if the broadcast model carries an epoch, see {@link #stamped(Vector, int)}
+     */
+    public static boolean isStamped(Vector model, int modelSize) {
+        return model.size() == modelSize + 1;
+    }
+
+    /**
+     * @return the epoch of a stamped model
+     */
+    public static int stamp(Vector model) {
+        return (int) model.get(model.size() - 1);
+    }
+
+    /**
+     * @return the number of theta values in the message
+     */
+    public static int dimension(Vector message) {
+        return message.size() - TRAILER;
+    }
+
+    /**
+     * @return the mean squared training error
+     */
+    public static double loss(Vector message) {
+        return message.get(message.size() - 2);
+    }
+
+    public static double weight(Vector message) {
+        return message.get(message.size() - 1);
+    }
+
+    /**
+     * @return a copy of the theta values of the message
+     */
+    public static Vector theta(Vector message) {
+        int dimension = dimension(message);
+        Vector theta = new Model(dimension);
+        for (int i = 0; i < dimension; i++) {
+            theta.set(i, message.get(i));
+        }
+        return theta;
+    }
+}
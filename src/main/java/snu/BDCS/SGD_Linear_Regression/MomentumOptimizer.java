@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+
+/**
+ * Gradient steps along a velocity that accumulates past gradients:
+ * v = beta1 * v + gradient, then theta -= rate * v, or with Nesterov
+ * momentum theta -= rate * (gradient + beta1 * v).
+ */
+public final class MomentumOptimizer implements Optimizer {
+
+    private final LearningRateSchedule schedule;
+    private final double momentum;
+    private final boolean nesterov;
+
+    @Inject
+    public MomentumOptimizer(LearningRateSchedule schedule,
+                             @Parameter(LinearSGD_Driver.Parameters.Beta1.class) double momentum,
+                             @Parameter(LinearSGD_Driver.Parameters.Nesterov.class) boolean nesterov) {
+        this.schedule = schedule;
+        this.momentum = momentum;
+        this.nesterov = nesterov;
+    }
+
+    /**
+     * The velocity keeps moving theta along steps of zero gradient, which a
+     * sparse kernel does not apply
+     */
+    @Override
+    public boolean supportsSparse() {
+        return false;
+    }
+
+    @Override
+    public Rule newRule(int dimension) {
+        final double[] velocity = new double[dimension];
+        return new ScheduledRule(schedule, velocity) {
+            @Override
+            public void apply(double[] theta, int index, double gradient) {
+                final double v = momentum * velocity[index] + gradient;
+                velocity[index] = v;
+                theta[index] -= rate * (nesterov ? gradient + momentum * v : v);
+            }
+        };
+    }
+}
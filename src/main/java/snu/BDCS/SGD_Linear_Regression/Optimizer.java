@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.tang.annotations.DefaultImplementation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The rule that turns gradients into updates of theta, bound through TANG by
+ * {@link OptimizerConfiguration}. The optimizer itself only holds the
+ * hyperparameters; every SGDUpdater gets a {@link Rule} of its own holding
+ * the per-coordinate state in primitive arrays, so that threads never share
+ * that state.
+ */
+@DefaultImplementation(SGDOptimizer.class)
+public interface Optimizer {
+
+    /**
+     * @return a new rule with fresh state for a model of the given dimension
+     */
+    Rule newRule(int dimension);
+
+    /**
+     * Sparse kernels only apply a step to the coordinates it touches. For
+     * the others the step has a zero gradient, and the dense kernels apply
+     * it anyway.
+     *
+     * @return true if the rules give the same updates when those zero
+     * gradients are skipped, so that sparse input trains the same model as
+     * the same rows in dense form
+     */
+    boolean supportsSparse();
+
+    interface Rule {
+
+        /**
+         * Called once before every update of theta, which may touch any
+         * number of coordinates
+         */
+        void nextStep();
+
+        /**
+         * Applies the gradient of one coordinate to theta. Sparse updates
+         * only call this for the coordinates they touch, see
+         * {@link #supportsSparse()}.
+         */
+        void apply(double[] theta, int index, double gradient);
+
+        /**
+         * Writes the state of the rule for a checkpoint
+         */
+        void write(DataOutput out) throws IOException;
+
+        /**
+         * Restores the state written by a rule of the same optimizer and dimension
+         */
+        void read(DataInput in) throws IOException;
+    }
+
+    /**
+     * Base of the rules that follow a learning rate schedule. The step and
+     * the per-coordinate arrays given to the constructor are the state that
+     * is checkpointed.
+     */
+    abstract class ScheduledRule implements Rule {
+
+        private final LearningRateSchedule schedule;
+
+        /**
+         * The number of steps taken
+         */
+        protected long step = 0;
+
+        /**
+         * The learning rate of the current step
+         */
+        protected double rate;
+
+        private final double[][] state;
+
+        protected ScheduledRule(LearningRateSchedule schedule, double[]... state) {
+            this.schedule = schedule;
+            this.state = state;
+        }
+
+        @Override
+        public void nextStep() {
+            rate = schedule.rate(step);
+            ++step;
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+            out.writeLong(step);
+            for (double[] values : state) {
+                out.writeInt(values.length);
+                for (double value : values) {
+                    out.writeDouble(value);
+                }
+            }
+        }
+
+        @Override
+        public void read(DataInput in) throws IOException {
+            step = in.readLong();
+            for (double[] values : state) {
+                final int length = in.readInt();
+                if (length != values.length) {
+                    throw new IOException("Expected optimizer state of dimension " + values.length
+                            + " but found " + length);
+                }
+                for (int i = 0; i < length; i++) {
+                    values[i] = in.readDouble();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.tang.Configuration;
+import com.microsoft.tang.JavaConfigurationBuilder;
+import com.microsoft.tang.Tang;
+import com.microsoft.tang.annotations.Parameter;
+import com.microsoft.tang.exceptions.BindException;
+import com.microsoft.tang.exceptions.InjectionException;
+
+import javax.inject.Inject;
+
+/**
+ * Reads the optimizer parameters in the driver and hands them down to the
+ * tasks, binding the {@link Optimizer} implementation named by the
+ * "optimizer" parameter: sgd, momentum, adagrad, rmsprop or adam.
+ * Momentum and adam only train on dense input, see
+ * {@link Optimizer#supportsSparse()}.
+ */
+public final class OptimizerConfiguration {
+
+    private final String optimizer;
+    private final Class<? extends Optimizer> optimizerClass;
+    private final double learningRate;
+    private final String schedule;
+    private final double decayRate;
+    private final int decaySteps;
+    private final int warmupSteps;
+    private final double beta1;
+    private final double beta2;
+    private final double epsilon;
+    private final boolean nesterov;
+
+    @Inject
+    public OptimizerConfiguration(@Parameter(LinearSGD_Driver.Parameters.OptimizerType.class) String optimizer,
+                                  @Parameter(LinearSGD_Driver.Parameters.LearningRate.class) double learningRate,
+                                  @Parameter(LinearSGD_Driver.Parameters.Schedule.class) String schedule,
+                                  @Parameter(LinearSGD_Driver.Parameters.DecayRate.class) double decayRate,
+                                  @Parameter(LinearSGD_Driver.Parameters.DecaySteps.class) int decaySteps,
+                                  @Parameter(LinearSGD_Driver.Parameters.WarmupSteps.class) int warmupSteps,
+                                  @Parameter(LinearSGD_Driver.Parameters.Beta1.class) double beta1,
+                                  @Parameter(LinearSGD_Driver.Parameters.Beta2.class) double beta2,
+                                  @Parameter(LinearSGD_Driver.Parameters.Epsilon.class) double epsilon,
+                                  @Parameter(LinearSGD_Driver.Parameters.Nesterov.class) boolean nesterov,
+                                  @Parameter(LinearSGD_Driver.Parameters.InputFormat.class) String inputFormat) {
+        this.optimizer = optimizer;
+        this.optimizerClass = optimizerClass(optimizer);
+        // Fail in the driver rather than in every task
+        new LearningRateSchedule(learningRate, schedule, decayRate, decaySteps, warmupSteps);
+        this.learningRate = learningRate;
+        this.schedule = schedule;
+        this.decayRate = decayRate;
+        this.decaySteps = decaySteps;
+        this.warmupSteps = warmupSteps;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.nesterov = nesterov;
+        // Fail in the driver rather than in every task
+        if ("libsvm".equals(inputFormat) && !newOptimizer().supportsSparse()) {
+            throw new IllegalArgumentException("The " + optimizer
+                    + " optimizer does not support sparse input, use sgd, adagrad or rmsprop");
+        }
+    }
+
+    /**
+     * @return the optimizer the tasks get
+     */
+    public Optimizer newOptimizer() {
+        try {
+            return Tang.Factory.getTang().newInjector(toConfiguration()).getInstance(Optimizer.class);
+        } catch (final InjectionException e) {
+            throw new RuntimeException("Unable to instantiate the " + optimizer + " optimizer", e);
+        }
+    }
+
+    private static Class<? extends Optimizer> optimizerClass(String optimizer) {
+        switch (optimizer) {
+            case "sgd":
+                return SGDOptimizer.class;
+            case "momentum":
+                return MomentumOptimizer.class;
+            case "adagrad":
+                return AdaGradOptimizer.class;
+            case "rmsprop":
+                return RMSPropOptimizer.class;
+            case "adam":
+                return AdamOptimizer.class;
+            default:
+                throw new IllegalArgumentException("Unknown optimizer: " + optimizer);
+        }
+    }
+
+    /**
+     * @return the configuration binding the optimizer and its parameters
+     */
+    public Configuration toConfiguration() {
+        try {
+            final JavaConfigurationBuilder b = Tang.Factory.getTang().newConfigurationBuilder();
+            b.bindImplementation(Optimizer.class, optimizerClass);
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.LearningRate.class, String.valueOf(learningRate));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.Schedule.class, schedule);
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.DecayRate.class, String.valueOf(decayRate));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.DecaySteps.class, String.valueOf(decaySteps));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.WarmupSteps.class, String.valueOf(warmupSteps));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.Beta1.class, String.valueOf(beta1));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.Beta2.class, String.valueOf(beta2));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.Epsilon.class, String.valueOf(epsilon));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.Nesterov.class, String.valueOf(nesterov));
+            return b.build();
+        } catch (final BindException e) {
+            throw new RuntimeException("Unable to bind the optimizer parameters", e);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the SGD epoch of a partition on several threads, each one over its
+ * own contiguous range of rows.
+ * <p/>
+ * In hogwild mode all the threads update one shared theta without any
+ * locking; their updates may overwrite each other, which SGD tolerates when
+ * the updates are sparse or small. In replica mode every thread trains its
+ * own copy of theta, starting from the shared one, and the copies are
+ * averaged, weighted by their number of rows, at the end of the epoch.
+ * <p/>
+ * With one thread the epoch runs on the calling thread.
+ */
+public final class ParallelSGDUpdater {
+
+    public static final String HOGWILD = "hogwild";
+    public static final String REPLICA = "replica";
+
+    /**
+     * The number of values of theta, including the bias
+     */
+    private final int modelSize;
+
+    /**
+     * The model, shared by the threads in hogwild mode
+     */
+    private final double[] theta;
+
+    /**
+     * The model of every thread, theta itself in hogwild mode
+     */
+    private final double[][] replicas;
+
+    private final SGDUpdater[] updaters;
+
+    /**
+     * The optimizer state of every thread
+     */
+    private final Optimizer.Rule[] rules;
+
+    private final boolean hogwild;
+
+    /**
+     * null with a single thread
+     */
+    private final ExecutorService pool;
+
+    /**
+     * @param dimension    the number of features
+     * @param intercept    whether the model has a bias
+     * @param optimizer    the update rule, of which every thread gets its own state
+     * @param batchSize    the number of examples folded into one update
+     * @param numThreads   the number of threads sharing the partition
+     * @param mode         {@link #HOGWILD} or {@link #REPLICA}
+     * @param tracer       the tracer of the owning task
+     */
+    public ParallelSGDUpdater(int dimension, boolean intercept, Optimizer optimizer, int batchSize, int numThreads,
+                              String mode, TaskTracer tracer) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + numThreads);
+        }
+        if (!HOGWILD.equals(mode) && !REPLICA.equals(mode)) {
+            throw new IllegalArgumentException("Unknown parallel mode: " + mode);
+        }
+        this.modelSize = ModelMessage.modelSize(dimension, intercept);
+        this.hogwild = HOGWILD.equals(mode);
+        this.theta = new double[modelSize];
+        this.replicas = new double[numThreads][];
+        this.updaters = new SGDUpdater[numThreads];
+        this.rules = new Optimizer.Rule[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            replicas[t] = hogwild || numThreads == 1 ? theta : new double[modelSize];
+            rules[t] = optimizer.newRule(modelSize);
+            updaters[t] = new SGDUpdater(replicas[t], intercept, rules[t], batchSize, tracer);
+        }
+        this.pool = numThreads == 1 ? null : Executors.newFixedThreadPool(numThreads);
+    }
+
+    public double[] getTheta() {
+        return theta;
+    }
+
+    /**
+     * Copies the given model into the shared theta
+     */
+    public void setTheta(Vector model) {
+        for (int i = 0; i < modelSize; i++) {
+            theta[i] = model.get(i);
+        }
+    }
+
+    public void setTheta(double[] model) {
+        System.arraycopy(model, 0, theta, 0, modelSize);
+    }
+
+    /**
+     * Writes the optimizer state of every thread for a checkpoint
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(rules.length);
+        for (Optimizer.Rule rule : rules) {
+            rule.write(out);
+        }
+    }
+
+    /**
+     * Restores the optimizer state written by {@link #writeState(DataOutput)}
+     * with the same number of threads
+     */
+    public void readState(DataInput in) throws IOException {
+        final int numThreads = in.readInt();
+        if (numThreads != rules.length) {
+            throw new IOException("The checkpoint holds the optimizer state of " + numThreads
+                    + " threads rather than " + rules.length);
+        }
+        for (Optimizer.Rule rule : rules) {
+            rule.read(in);
+        }
+    }
+
+    /**
+     * @return the mean of the squared prediction errors of the last epoch
+     */
+    public double takeMeanSquaredError(int numRows) {
+        double sum = 0.0;
+        for (SGDUpdater updater : updaters) {
+            sum += updater.takeSquaredError();
+        }
+        return numRows == 0 ? 0.0 : sum / numRows;
+    }
+
+    /**
+     * Runs one pass over the partition and leaves the result in theta
+     */
+    public void epoch(final PartitionStore partition) throws InterruptedException, ExecutionException {
+        if (pool == null) {
+            updaters[0].epoch(partition);
+            return;
+        }
+        final int numRows = partition.getNumRows();
+        final int numThreads = updaters.length;
+        final List<Future<?>> futures = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            final SGDUpdater updater = updaters[t];
+            final double[] replica = replicas[t];
+            final int fromRow = rangeStart(t, numRows);
+            final int toRow = rangeStart(t + 1, numRows);
+            futures.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (replica != theta) {
+                        System.arraycopy(theta, 0, replica, 0, modelSize);
+                    }
+                    updater.epoch(partition, fromRow, toRow);
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        if (!hogwild && numRows > 0) {
+            mergeReplicas(numRows);
+        }
+    }
+
+    /**
+     * Averages the replicas into theta, weighted by the rows each one saw
+     */
+    private void mergeReplicas(int numRows) {
+        Arrays.fill(theta, 0.0);
+        for (int t = 0; t < replicas.length; t++) {
+            final double weight = (double) (rangeStart(t + 1, numRows) - rangeStart(t, numRows)) / numRows;
+            final double[] replica = replicas[t];
+            for (int i = 0; i < modelSize; i++) {
+                theta[i] += weight * replica[i];
+            }
+        }
+    }
+
+    /**
+     * @return the first row of the range of the given thread
+     */
+    private int rangeStart(int thread, int numRows) {
+        return (int) ((long) numRows * thread / updaters.length);
+    }
+
+    /**
+     * Stops the threads
+     */
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * The connection of a ComputeTask to the {@link ParameterServer} of the
+ * stale synchronous training mode. At a reduced precision the changes are
+ * pushed through a {@link QuantizedVectorCodec} of this client, so that
+ * with error feedback the rounding error of a push goes with the next one.
+ * <p/>
+ * A server that does not accept the connection in time fails the task, so
+ * that the driver rebuilds the group rather than the task waiting for a
+ * controller that is gone or could not listen.
+ */
+public final class ParameterClient implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The controller is submitted once all the ComputeTasks run, so its
+     * server may not be listening yet
+     */
+    private static final long RETRY_MILLIS = 100;
+
+    /**
+     * How long a ComputeTask waits for the server of its controller to listen
+     */
+    public static final long CONNECT_TIMEOUT_MILLIS = 60000;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private final TaskMetrics metrics;
+
+    /**
+     * Null to exchange doubles
+     */
+    private final QuantizedVectorCodec codec;
+
+    /**
+     * @param address the "host:port" of the server
+     * @param weight  the number of examples of this task
+     * @param codec   the codec of the precision of the server, null for float64
+     * @param metrics counts the bytes of the models
+     * @param connectTimeoutMillis how long to wait for the server to listen
+     * @throws ConnectException if the server did not accept the connection in time
+     */
+    public ParameterClient(String address, double weight, QuantizedVectorCodec codec, TaskMetrics metrics,
+                           long connectTimeoutMillis) throws IOException, InterruptedException {
+        final int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected host:port but found " + address);
+        }
+        final InetSocketAddress server = new InetSocketAddress(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+        final long deadline = System.currentTimeMillis() + connectTimeoutMillis;
+        Socket connected = null;
+        while (connected == null) {
+            final long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                throw new ConnectException("The parameter server at " + address
+                        + " did not accept a connection within " + connectTimeoutMillis + " ms");
+            }
+            final Socket attempt = new Socket();
+            try {
+                attempt.connect(server, (int) Math.min(left, Integer.MAX_VALUE));
+                connected = attempt;
+            } catch (ConnectException | SocketTimeoutException e) {
+                attempt.close();
+                Thread.sleep(Math.min(RETRY_MILLIS, left));
+            }
+        }
+        this.socket = connected;
+        this.metrics = metrics;
+        this.codec = codec;
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        out.writeDouble(weight);
+        out.flush();
+    }
+
+    /**
+     * Waits until this task may start its next epoch and copies theta
+     *
+     * @return false once training stopped
+     */
+    public boolean pull(double[] theta) throws IOException {
+        out.writeByte(ParameterServer.PULL);
+        out.flush();
+        if (!in.readBoolean()) {
+            return false;
+        }
+        final byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        final long start = System.nanoTime();
+        if (codec == null) {
+            VectorCodec.decodeInto(data, theta);
+        } else {
+            QuantizedVectorCodec.decodeInto(data, theta);
+        }
+        metrics.received(data.length);
+        metrics.time(TaskMetrics.Timer.DECODE, start);
+        return true;
+    }
+
+    /**
+     * Sends the change this task made to theta in one epoch
+     *
+     * @param loss the mean squared error of the epoch
+     */
+    public void push(double[] delta, double loss) throws IOException {
+        final long start = System.nanoTime();
+        final byte[] data = codec == null ? VectorCodec.encode(delta) : codec.encodeUpdate(delta);
+        metrics.time(TaskMetrics.Timer.ENCODE, start);
+        out.writeByte(ParameterServer.PUSH);
+        out.writeInt(data.length);
+        out.write(data);
+        out.writeDouble(loss);
+        out.flush();
+        metrics.sent(data.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
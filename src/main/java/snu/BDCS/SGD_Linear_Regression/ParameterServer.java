@@ -0,0 +1,330 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The model of the stale synchronous training mode, served by the
+ * ControllerTask to the ComputeTasks over plain sockets instead of the
+ * broadcast and reduce.
+ * <p/>
+ * Every ComputeTask pulls theta before an epoch and pushes the change it
+ * made to it after, without waiting for the others. The change is applied
+ * as soon as it arrives, weighted by the share of the examples of the
+ * task. A task is only handed theta for its next epoch while it is at most
+ * staleness epochs ahead of the slowest task; staleness 0 keeps everyone
+ * in the same epoch. Even then the result differs from the weighted
+ * average of the bulk synchronous mode: a task that pulls later in an
+ * epoch already gets the changes the faster tasks pushed in it.
+ * <p/>
+ * At a reduced precision theta and the changes are sent through a
+ * {@link QuantizedVectorCodec}, theta without error feedback.
+ * <p/>
+ * The clock of a task is the number of epochs it pushed. The controller
+ * follows the clock of the slowest task through {@link #awaitClock(int)}.
+ * <p/>
+ * A port that can not be bound fails the ControllerTask, so the driver
+ * rebuilds the group, which gets other ports, and closes the ComputeTasks
+ * waiting to connect.
+ */
+public final class ParameterServer implements Closeable {
+
+    public static final String BSP = "bsp";
+    public static final String SSP = "ssp";
+
+    static final byte PULL = 1;
+    static final byte PUSH = 2;
+
+    private static final Logger LOG = Logger.getLogger(ParameterServer.class.getName());
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * @return the codec of the exchange precision, null for float64
+     */
+    static QuantizedVectorCodec codec(String precision, boolean errorFeedback, int dimension, boolean intercept,
+                                      TaskMetrics metrics) {
+        return "float64".equals(precision) ? null
+                : new QuantizedVectorCodec(precision, errorFeedback, dimension, intercept, metrics);
+    }
+
+    private final ServerSocket serverSocket;
+
+    private final int numWorkers;
+
+    private final int staleness;
+
+    private final double[] theta;
+
+    /**
+     * The clock and the number of examples of every task, by connection
+     */
+    private final int[] clocks;
+    private final double[] weights;
+    private double totalWeight = 0.0;
+    private int connected = 0;
+
+    /**
+     * The weighted sum of the mean squared errors pushed for a clock and
+     * the weight of the tasks that pushed them
+     */
+    private final Map<Integer, double[]> losses = new HashMap<>();
+
+    private boolean stopped = false;
+
+    /**
+     * The number of connections being served
+     */
+    private int serving = 0;
+
+    /**
+     * Accepts the connections and serves each of them
+     */
+    private final ExecutorService pool;
+
+    private final List<Socket> sockets = new ArrayList<>();
+
+    private final TaskMetrics metrics;
+
+    /**
+     * Null to exchange doubles
+     */
+    private final QuantizedVectorCodec codec;
+
+    /**
+     * @param port       the port to listen on
+     * @param numWorkers the number of ComputeTasks that connect
+     * @param staleness  the most epochs a task may be ahead of the slowest
+     * @param theta      the initial model, updated in place
+     * @param clock      the clock every task starts at, non-zero when resuming
+     * @param codec      the codec of a reduced precision, null for float64
+     * @param metrics    counts the bytes of the models
+     * @throws IOException if the port can not be bound
+     */
+    public ParameterServer(int port, int numWorkers, int staleness, double[] theta, int clock,
+                           QuantizedVectorCodec codec, TaskMetrics metrics) throws IOException {
+        if (staleness < 0) {
+            throw new IllegalArgumentException("Staleness must not be negative: " + staleness);
+        }
+        try {
+            this.serverSocket = new ServerSocket(port);
+        } catch (BindException e) {
+            throw new IOException("Unable to serve the model on port " + port, e);
+        }
+        this.numWorkers = numWorkers;
+        this.staleness = staleness;
+        this.theta = theta;
+        this.metrics = metrics;
+        this.codec = codec;
+        this.clocks = new int[numWorkers];
+        this.weights = new double[numWorkers];
+        for (int w = 0; w < numWorkers; w++) {
+            clocks[w] = clock;
+        }
+        this.pool = Executors.newFixedThreadPool(numWorkers + 1);
+        pool.submit(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    private void accept() {
+        try {
+            for (int w = 0; w < numWorkers; w++) {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                synchronized (this) {
+                    sockets.add(socket);
+                }
+                final int worker = w;
+                pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(worker, socket);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                LOG.log(Level.WARNING, "Stopped accepting ComputeTasks", e);
+            }
+        }
+    }
+
+    private void serve(int worker, Socket socket) {
+        synchronized (this) {
+            ++serving;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            register(worker, in.readDouble());
+            final double[] delta = new double[theta.length];
+            while (true) {
+                final byte op = in.readByte();
+                if (op == PULL) {
+                    final byte[] model = awaitTurn(worker);
+                    out.writeBoolean(model != null);
+                    if (model != null) {
+                        out.writeInt(model.length);
+                        out.write(model);
+                        metrics.sent(model.length);
+                    }
+                    out.flush();
+                } else if (op == PUSH) {
+                    final byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    metrics.received(data.length);
+                    if (codec == null) {
+                        VectorCodec.decodeInto(data, delta);
+                    } else {
+                        QuantizedVectorCodec.decodeInto(data, delta);
+                    }
+                    apply(worker, delta, in.readDouble());
+                } else {
+                    throw new IOException("Unknown operation " + op);
+                }
+            }
+        } catch (IOException e) {
+            if (!isStopped()) {
+                LOG.log(Level.WARNING, "Lost the connection of ComputeTask " + worker, e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                --serving;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void register(int worker, double weight) {
+        weights[worker] = weight;
+        totalWeight += weight;
+        ++connected;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the task may start its next epoch
+     *
+     * @return theta encoded, or null once training stopped
+     */
+    private synchronized byte[] awaitTurn(int worker) throws InterruptedException {
+        while (!stopped && (connected < numWorkers || clocks[worker] - minClock() > staleness)) {
+            wait();
+        }
+        if (stopped) {
+            return null;
+        }
+        return codec == null ? VectorCodec.encode(theta) : codec.encode(theta);
+    }
+
+    private synchronized void apply(int worker, double[] delta, double loss) {
+        if (stopped) {
+            return;
+        }
+        final double share = totalWeight == 0 ? 0.0 : weights[worker] / totalWeight;
+        for (int i = 0; i < theta.length; i++) {
+            theta[i] += share * delta[i];
+        }
+        final int clock = ++clocks[worker];
+        double[] sum = losses.get(clock);
+        if (sum == null) {
+            sum = new double[2];
+            losses.put(clock, sum);
+        }
+        sum[0] += weights[worker] * loss;
+        sum[1] += weights[worker];
+        notifyAll();
+    }
+
+    private int minClock() {
+        int min = Integer.MAX_VALUE;
+        for (int clock : clocks) {
+            min = Math.min(min, clock);
+        }
+        return min;
+    }
+
+    /**
+     * Waits until every task pushed the given number of epochs
+     *
+     * @return theta at that time as a {@link ModelMessage}, with the mean
+     * squared error of that epoch over all the tasks
+     */
+    public synchronized Vector awaitClock(int clock) throws InterruptedException {
+        while (minClock() < clock) {
+            wait();
+        }
+        final double[] sum = losses.remove(clock);
+        final double loss = sum == null || sum[1] == 0 ? 0.0 : sum[0] / sum[1];
+        return ModelMessage.of(theta, loss, totalWeight);
+    }
+
+    /**
+     * Ends training: every task gets no theta on its next pull
+     */
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Ends training and waits, up to the timeout, until every task got no
+     * theta and hung up
+     */
+    public synchronized void finish(long timeoutMillis) throws InterruptedException {
+        stop();
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (serving > 0) {
+            final long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                LOG.log(Level.WARNING, serving + " ComputeTasks did not hang up");
+                return;
+            }
+            wait(left);
+        }
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        serverSocket.close();
+        synchronized (this) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        pool.shutdownNow();
+    }
+}
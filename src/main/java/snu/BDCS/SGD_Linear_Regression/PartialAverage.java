@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import com.microsoft.reef.io.network.group.operators.Reduce;
+import com.microsoft.tang.annotations.DefaultImplementation;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+
+/**
+ * What a ComputeTask sends up the reduce tree in a round. A leaf of the
+ * {@link ReduceTree} sends its own model. The driver binds {@link Children}
+ * for the inner nodes. They first receive the partial average of their
+ * children through a Reduce of their own and fold their model into it, so
+ * that every task only receives up to fan-in messages per round.
+ */
+@DefaultImplementation(PartialAverage.Leaf.class)
+public interface PartialAverage {
+
+    /**
+     * @param message the ModelMessage of this task
+     * @return the ModelMessage to send to the parent
+     */
+    Vector of(Vector message) throws Exception;
+
+    /**
+     * A node without children
+     */
+    final class Leaf implements PartialAverage {
+
+        @Inject
+        public Leaf() {
+        }
+
+        @Override
+        public Vector of(Vector message) {
+            return message;
+        }
+    }
+
+    /**
+     * An inner node, which averages its children in
+     */
+    final class Children implements PartialAverage {
+
+        /**
+         * Receives the partial average of the children of this task
+         */
+        private final Reduce.Receiver<Vector> childReceiver;
+
+        private final VectorAverage average;
+
+        @Inject
+        public Children(Reduce.Receiver<Vector> childReceiver, VectorAverage average) {
+            this.childReceiver = childReceiver;
+            this.average = average;
+        }
+
+        @Override
+        public Vector of(Vector message) throws Exception {
+            final Vector children = childReceiver.reduce();
+            if (children == null) {
+                // No child sent anything, our own message is the whole average
+                return message;
+            }
+            return average.apply(Arrays.asList(message, children));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+
+import javax.inject.Inject;
+
+/**
+ * Keeps the partition a ComputeTask parsed from the input split of its
+ * context, so that the next ComputeTask on the context, of a rebuilt group
+ * or of the next run, trains on it without parsing the split again. It is
+ * the service of the context the driver stacks on every data loaded
+ * context, so TANG hands every task of that context the same instance.
+ * <p/>
+ * A partition is only handed out for the input format and dimension it was
+ * parsed with. Standardization scales a partition in place, so the cache
+ * also keeps the feature moments of the partition as it was parsed and the
+ * scaling it was standardized with, and {@link #rescale(FeatureScaling)}
+ * takes it from that scaling to the one the next task needs.
+ */
+public final class PartitionCache {
+
+    /**
+     * The prefix of the ids of the contexts holding a cache
+     */
+    public static final String CONTEXT_PREFIX = "PartitionCache-";
+
+    private String inputFormat;
+
+    private int dimension;
+
+    private PartitionStore partition;
+
+    /**
+     * The moments of the partition as it was parsed, null until a task
+     * standardizing it computed them
+     */
+    private Vector moments;
+
+    /**
+     * The scaling the partition is standardized with
+     */
+    private FeatureScaling applied;
+
+    @Inject
+    public PartitionCache() {
+    }
+
+    /**
+     * @return the cached partition parsed with the given format and
+     * dimension, or null
+     */
+    public synchronized PartitionStore get(String inputFormat, int dimension) {
+        if (partition == null || !inputFormat.equals(this.inputFormat) || dimension != this.dimension) {
+            return null;
+        }
+        return partition;
+    }
+
+    /**
+     * Keeps the partition as it was parsed, in place of the one cached before
+     */
+    public synchronized void put(String inputFormat, int dimension, PartitionStore partition) {
+        this.inputFormat = inputFormat;
+        this.dimension = dimension;
+        this.partition = partition;
+        this.moments = null;
+        this.applied = FeatureScaling.identity(dimension);
+    }
+
+    /**
+     * @return the moments of the cached partition as it was parsed, see
+     * {@link FeatureMoments#of(PartitionStore)}
+     */
+    public synchronized Vector moments() {
+        if (moments == null) {
+            // Computed before any scaling is applied
+            moments = FeatureMoments.of(partition);
+        }
+        return moments;
+    }
+
+    /**
+     * Standardizes the cached partition in place with the given scaling
+     * rather than the one it has, null for the units it was parsed in
+     */
+    public synchronized void rescale(FeatureScaling scaling) {
+        final FeatureScaling target = scaling == null ? FeatureScaling.identity(dimension) : scaling;
+        final FeatureScaling relative = target.relativeTo(applied);
+        if (!relative.isIdentity()) {
+            // The moments stay those of the partition as it was parsed
+            moments();
+            relative.apply(partition);
+        }
+        applied = target;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+/**
+ * The examples of one partition kept in primitive arrays. Dense partitions
+ * are stored row-major ({@link DensePartitionStore}), sparse ones in
+ * compressed rows of index and value arrays ({@link SparsePartitionStore}).
+ */
+public interface PartitionStore {
+
+    /**
+     * @return the number of features of the model
+     */
+    int getDimension();
+
+    /**
+     * @return the number of rows stored
+     */
+    int getNumRows();
+
+    boolean isEmpty();
+
+    /**
+     * @return the label of every row, not a copy
+     */
+    double[] getLabels();
+
+    /**
+     * Replaces every feature x_i by (x_i - mean_i) / scale_i and every label
+     * y by (y - labelMean) / labelScale, in place
+     */
+    void standardize(double[] mean, double[] scale, double labelMean, double labelScale);
+}
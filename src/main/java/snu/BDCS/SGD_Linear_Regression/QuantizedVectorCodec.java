@@ -0,0 +1,291 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import com.microsoft.tang.annotations.Parameter;
+import com.microsoft.wake.remote.Codec;
+
+import javax.inject.Inject;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Codec for the Vector type that sends the values at reduced precision
+ * <p/>
+ * float32 narrows every value to a float. int16 and int8 scale the values by
+ * the largest magnitude of the vector and round them stochastically to
+ * 16 or 8 bit integers, so that the quantization is unbiased.
+ * <p/>
+ * Error feedback, which adds the rounding error of a vector to the next
+ * one, only applies to updates that the receiver sums up, encoded by
+ * {@link #encodeUpdate(double[])}. The models of the broadcast and the
+ * reduce are absolute values, for which the error of the previous model
+ * would only add to the error of the next.
+ * <p/>
+ * Only the theta values of the {@link ModelMessage.Model}s are quantized:
+ * their values past theta, such as the weight of a message, and the vectors
+ * that are not models at all, such as the feature scaling, are sent as
+ * doubles.
+ * <p/>
+ * The size is followed by the mode, the number of quantized values, the
+ * scale for the integer modes, the quantized values and the exact ones. A
+ * vector decoded with quantized values is a model again.
+ */
+public class QuantizedVectorCodec implements Codec<Vector> {
+
+    public static final String FLOAT32 = "float32";
+    public static final String INT16 = "int16";
+    public static final String INT8 = "int8";
+
+    private static final int MODE_FLOAT32 = 0;
+    private static final int MODE_INT16 = 1;
+    private static final int MODE_INT8 = 2;
+
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final int mode;
+
+    /**
+     * The number of theta values of a model, the values past them are not quantized
+     */
+    private final int modelSize;
+
+    private final boolean errorFeedback;
+
+    /**
+     * The rounding error of the last update, per coordinate
+     */
+    private double[] residual = new double[0];
+
+    /**
+     * The values being quantized
+     */
+    private double[] pending = new double[0];
+
+    /**
+     * xorshift state of the stochastic rounding
+     */
+    private long seed = System.nanoTime() | 1L;
+
+    private final TaskMetrics metrics;
+
+    /**
+     * This class is instantiated by TANG
+     */
+    @Inject
+    public QuantizedVectorCodec(@Parameter(LinearSGD_Driver.Parameters.ExchangePrecision.class) String precision,
+                                @Parameter(LinearSGD_Driver.Parameters.ErrorFeedback.class) boolean errorFeedback,
+                                @Parameter(LinearSGD_Driver.Parameters.Dimension.class) int dimension,
+                                @Parameter(LinearSGD_Driver.Parameters.FitIntercept.class) boolean intercept,
+                                TaskMetrics metrics) {
+        this.mode = parseMode(precision);
+        this.metrics = metrics;
+        this.modelSize = ModelMessage.modelSize(dimension, intercept);
+        this.errorFeedback = errorFeedback;
+    }
+
+    /**
+     * @return the wire mode of a precision name
+     * @throws IllegalArgumentException if the name is not a reduced precision
+     */
+    public static int parseMode(String precision) {
+        switch (precision) {
+            case FLOAT32:
+                return MODE_FLOAT32;
+            case INT16:
+                return MODE_INT16;
+            case INT8:
+                return MODE_INT8;
+            default:
+                throw new IllegalArgumentException("Unknown exchange precision: " + precision);
+        }
+    }
+
+    @Override
+    public Vector decode(byte[] data) {
+        final long start = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ORDER);
+        int size = buffer.getInt();
+        int wireMode = buffer.getInt();
+        int packed = buffer.getInt();
+        double[] values = new double[packed];
+        unpack(buffer, wireMode, values);
+        Vector result = packed > 0 ? new ModelMessage.Model(size) : new DenseVector(size);
+        for (int i = 0; i < packed; i++)
+            result.set(i, values[i]);
+        for (int i = packed; i < size; i++)
+            result.set(i, buffer.getDouble());
+        metrics.received(data.length);
+        metrics.time(TaskMetrics.Timer.DECODE, start);
+        return result;
+    }
+
+    /**
+     * Decodes an update encoded by {@link #encodeUpdate(double[])} into an
+     * existing array of its size
+     */
+    public static void decodeInto(byte[] data, double[] target) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ORDER);
+        int size = buffer.getInt();
+        if (size != target.length) {
+            throw new IllegalArgumentException("Encoded size " + size
+                    + " does not match the target size " + target.length);
+        }
+        int wireMode = buffer.getInt();
+        buffer.getInt();
+        unpack(buffer, wireMode, target);
+    }
+
+    /**
+     * Reads as many quantized values as the target holds
+     */
+    private static void unpack(ByteBuffer buffer, int wireMode, double[] target) {
+        int packed = target.length;
+        if (wireMode == MODE_FLOAT32) {
+            FloatBuffer values = buffer.asFloatBuffer();
+            for (int i = 0; i < packed; i++)
+                target[i] = values.get(i);
+            buffer.position(buffer.position() + 4 * packed);
+            return;
+        }
+        double scale = buffer.getDouble();
+        if (wireMode == MODE_INT16) {
+            ShortBuffer values = buffer.asShortBuffer();
+            for (int i = 0; i < packed; i++)
+                target[i] = values.get(i) * scale;
+            buffer.position(buffer.position() + 2 * packed);
+        } else {
+            int offset = buffer.position();
+            byte[] data = buffer.array();
+            for (int i = 0; i < packed; i++)
+                target[i] = data[offset + i] * scale;
+            buffer.position(offset + packed);
+        }
+    }
+
+    @Override
+    public synchronized byte[] encode(Vector vec) {
+        final long start = System.nanoTime();
+        int size = vec.size();
+        int packed = ModelMessage.isModel(vec) ? Math.min(modelSize, size) : 0;
+        if (pending.length != packed) {
+            pending = new double[packed];
+        }
+        for (int i = 0; i < packed; i++)
+            pending[i] = vec.get(i);
+        // A model is sent as it is, the error of the previous one does not belong to it
+        ByteBuffer buffer = pack(size, packed, false);
+        byte[] data = putExact(vec, packed, buffer);
+        metrics.sent(data.length);
+        metrics.time(TaskMetrics.Timer.ENCODE, start);
+        return data;
+    }
+
+    /**
+     * Encodes a model held in an array, every value quantized, for
+     * {@link #decodeInto(byte[], double[])}. Unlike the Codec methods it
+     * counts nothing, its caller does.
+     */
+    public synchronized byte[] encode(double[] model) {
+        return packArray(model, false);
+    }
+
+    /**
+     * Encodes an update, such as the change an epoch made to theta, which
+     * the receiver adds up with the previous ones. With error feedback the
+     * rounding error of an update is carried over to the next one, so that
+     * the sum of the decoded updates follows the sum of the updates.
+     * Decoded by {@link #decodeInto(byte[], double[])}; counts nothing.
+     */
+    public synchronized byte[] encodeUpdate(double[] update) {
+        return packArray(update, errorFeedback);
+    }
+
+    private byte[] packArray(double[] values, boolean feedback) {
+        if (pending.length != values.length) {
+            pending = new double[values.length];
+        }
+        System.arraycopy(values, 0, pending, 0, values.length);
+        return pack(values.length, values.length, feedback).array();
+    }
+
+    /**
+     * Writes the header and quantizes the values in pending
+     *
+     * @param feedback whether to add the rounding error of the previous
+     *                 values to these and keep their own for the next ones
+     * @return the buffer, positioned after the quantized values
+     */
+    private ByteBuffer pack(int size, int packed, boolean feedback) {
+        if (mode == MODE_FLOAT32) {
+            ByteBuffer buffer = header(size, packed, 4 * packed + 8 * (size - packed));
+            FloatBuffer values = buffer.asFloatBuffer();
+            for (int i = 0; i < packed; i++)
+                values.put(i, (float) pending[i]);
+            buffer.position(buffer.position() + 4 * packed);
+            return buffer;
+        }
+
+        if (feedback && residual.length != packed) {
+            residual = new double[packed];
+        }
+        double max = 0.0;
+        for (int i = 0; i < packed; i++) {
+            if (feedback)
+                pending[i] += residual[i];
+            max = Math.max(max, Math.abs(pending[i]));
+        }
+        int levels = mode == MODE_INT16 ? Short.MAX_VALUE : Byte.MAX_VALUE;
+        double scale = max == 0.0 ? 1.0 : max / levels;
+        int width = mode == MODE_INT16 ? 2 : 1;
+        ByteBuffer buffer = header(size, packed, 8 + width * packed + 8 * (size - packed));
+        buffer.putDouble(scale);
+        ShortBuffer shorts = mode == MODE_INT16 ? buffer.asShortBuffer() : null;
+        int offset = buffer.position();
+        byte[] data = buffer.array();
+        for (int i = 0; i < packed; i++) {
+            int q = (int) Math.floor(pending[i] / scale + nextUniform());
+            q = Math.max(-levels, Math.min(levels, q));
+            if (shorts != null)
+                shorts.put(i, (short) q);
+            else
+                data[offset + i] = (byte) q;
+            if (feedback)
+                residual[i] = pending[i] - q * scale;
+        }
+        buffer.position(offset + width * packed);
+        return buffer;
+    }
+
+    /**
+     * Writes the values from the given index on as doubles
+     */
+    private static byte[] putExact(Vector vec, int from, ByteBuffer buffer) {
+        for (int i = from; i < vec.size(); i++)
+            buffer.putDouble(vec.get(i));
+        return buffer.array();
+    }
+
+    private ByteBuffer header(int size, int packed, int payloadBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + payloadBytes).order(ORDER);
+        buffer.putInt(size);
+        buffer.putInt(mode);
+        buffer.putInt(packed);
+        return buffer;
+    }
+
+    /**
+     * @return a uniform sample in [0, 1)
+     */
+    private double nextUniform() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (seed >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+
+/**
+ * Per-coordinate steps scaled down by the root of a moving average, with
+ * decay beta2, of the squared gradients of the coordinate.
+ * <p/>
+ * A zero gradient only decays the average without moving theta, so the
+ * steps a sparse kernel skipped for a coordinate are caught up at once the
+ * next time it is applied.
+ */
+public final class RMSPropOptimizer implements Optimizer {
+
+    private final LearningRateSchedule schedule;
+    private final double decay;
+    private final double epsilon;
+
+    @Inject
+    public RMSPropOptimizer(LearningRateSchedule schedule,
+                            @Parameter(LinearSGD_Driver.Parameters.Beta2.class) double decay,
+                            @Parameter(LinearSGD_Driver.Parameters.Epsilon.class) double epsilon) {
+        this.schedule = schedule;
+        this.decay = decay;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public boolean supportsSparse() {
+        return true;
+    }
+
+    @Override
+    public Rule newRule(int dimension) {
+        final double[] squares = new double[dimension];
+        // The step every coordinate was last applied at
+        final double[] lastSteps = new double[dimension];
+        return new ScheduledRule(schedule, squares, lastSteps) {
+            @Override
+            public void apply(double[] theta, int index, double gradient) {
+                final double skipped = step - 1 - lastSteps[index];
+                final double previous = skipped > 0
+                        ? squares[index] * Math.pow(decay, skipped) : squares[index];
+                final double mean = decay * previous + (1 - decay) * gradient * gradient;
+                squares[index] = mean;
+                lastSteps[index] = step;
+                theta[index] -= rate * gradient / (Math.sqrt(mean) + epsilon);
+            }
+        };
+    }
+}
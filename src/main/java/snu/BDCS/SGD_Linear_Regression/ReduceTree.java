@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+/**
+ * The shape of the reduce tree rooted at the controller. The controller is
+ * node 0 and ComputeTask i of the group is node i, so a group of n
+ * ComputeTasks has the nodes 0 to n. Node p receives from the nodes
+ * p * fanIn + 1 to p * fanIn + fanIn that exist, which makes the tree
+ * complete: only the last inner node may have fewer than fanIn children.
+ * <p/>
+ * The tree only depends on the size of the group, so the driver builds it
+ * again whenever a failure changes the group.
+ */
+public final class ReduceTree {
+
+    private final int fanIn;
+
+    private final int groupSize;
+
+    /**
+     * @param fanIn     the most nodes that reduce into the same node
+     * @param groupSize the number of ComputeTasks
+     */
+    public ReduceTree(int fanIn, int groupSize) {
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("The fan-in of the reduce tree must be at least 2: " + fanIn);
+        }
+        if (groupSize < 0) {
+            throw new IllegalArgumentException("The group size cannot be negative: " + groupSize);
+        }
+        this.fanIn = fanIn;
+        this.groupSize = groupSize;
+    }
+
+    /**
+     * @return true if the node has children, which are then its own Reduce
+     */
+    public boolean isInnerNode(int node) {
+        return node >= 0 && node * fanIn < groupSize;
+    }
+
+    /**
+     * @return the first child of the inner node
+     */
+    public int firstChild(int parent) {
+        checkInnerNode(parent);
+        return parent * fanIn + 1;
+    }
+
+    /**
+     * @return the last child of the inner node, inclusive
+     */
+    public int lastChild(int parent) {
+        checkInnerNode(parent);
+        return Math.min(parent * fanIn + fanIn, groupSize);
+    }
+
+    /**
+     * @return the node the ComputeTask node sends its partial average to
+     */
+    public int parent(int node) {
+        if (node < 1 || node > groupSize) {
+            throw new IllegalArgumentException("No ComputeTask is node " + node + " of " + groupSize);
+        }
+        return (node - 1) / fanIn;
+    }
+
+    private void checkInnerNode(int node) {
+        if (!isInnerNode(node)) {
+            throw new IllegalArgumentException("Node " + node + " of " + groupSize + " has no children");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import javax.inject.Inject;
+
+/**
+ * Plain gradient steps: theta -= rate * gradient
+ */
+public final class SGDOptimizer implements Optimizer {
+
+    private final LearningRateSchedule schedule;
+
+    @Inject
+    public SGDOptimizer(LearningRateSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * A zero gradient does not move theta
+     */
+    @Override
+    public boolean supportsSparse() {
+        return true;
+    }
+
+    @Override
+    public Rule newRule(int dimension) {
+        return new ScheduledRule(schedule) {
+            @Override
+            public void apply(double[] theta, int index, double gradient) {
+                theta[index] -= rate * gradient;
+            }
+        };
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * In-place SGD update engine for the least squares loss. Theta lives in a
+ * primitive buffer that is reused across epochs; the prediction is computed
+ * once per example and nothing is allocated inside the epoch loop. The
+ * gradients are turned into updates of theta by an {@link Optimizer.Rule}.
+ * <p/>
+ * With a batch size of 1 theta is updated after every example. With a batch
+ * size of B the gradients of B consecutive examples are accumulated against
+ * the same theta and applied as one averaged step. Dense micro-batches are
+ * computed as two blocked products, the residuals X_b theta - y and the
+ * gradient X_b' residuals, four rows at a time so that every load of theta
+ * or of the gradient serves four rows and the inner loops stay simple
+ * enough for the JIT to unroll and vectorize.
+ * <p/>
+ * Sparse partitions only touch the non-zero coordinates of each row, both
+ * in the prediction and in the update.
+ * <p/>
+ * An epoch can be restricted to a range of rows, and theta can be a buffer
+ * shared with other updaters, which is how {@link ParallelSGDUpdater} runs
+ * several of them over one partition.
+ * <p/>
+ * With an intercept, theta holds one more value than there are features:
+ * the bias, the weight of a constant 1 feature that is not stored in the
+ * rows but added by the kernels.
+ * <p/>
+ * The squared errors of the predictions made along the way are summed, which
+ * gives the training loss of the epoch without a separate pass.
+ * <p/>
+ * Single steps are traced at FINEST and micro-batches at FINER.
+ */
+public final class SGDUpdater {
+
+    /**
+     * Rows processed together by the blocked kernels
+     */
+    private static final int ROW_BLOCK = 4;
+
+    /**
+     * The number of features, and the index of the bias in theta
+     */
+    private final int dimension;
+    private final boolean intercept;
+    private final Optimizer.Rule rule;
+    private final int batchSize;
+
+    /**
+     * The model being trained, possibly shared with other updaters
+     */
+    private final double[] theta;
+
+    /**
+     * Gradient accumulator of the current micro-batch
+     */
+    private final double[] gradient;
+
+    /**
+     * Residuals of the rows of the current dense micro-batch
+     */
+    private final double[] residuals;
+
+    private final TaskTracer tracer;
+
+    /**
+     * Sum of the squared prediction errors since the last takeSquaredError
+     */
+    private double squaredError = 0.0;
+
+    /**
+     * @param dimension the number of features
+     * @param intercept whether the model has a bias
+     * @param rule      the update rule, owned by this updater
+     * @param batchSize the number of examples folded into one update
+     * @param tracer    the tracer of the owning task
+     */
+    public SGDUpdater(int dimension, boolean intercept, Optimizer.Rule rule, int batchSize, TaskTracer tracer) {
+        this(new double[ModelMessage.modelSize(dimension, intercept)], intercept, rule, batchSize, tracer);
+    }
+
+    /**
+     * @param theta     the buffer holding the model, updated in place
+     * @param intercept whether the last value of theta is a bias
+     * @param rule      the update rule, owned by this updater
+     * @param batchSize the number of examples folded into one update
+     * @param tracer    the tracer of the owning task
+     */
+    public SGDUpdater(double[] theta, boolean intercept, Optimizer.Rule rule, int batchSize, TaskTracer tracer) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.dimension = intercept ? theta.length - 1 : theta.length;
+        this.intercept = intercept;
+        this.rule = rule;
+        this.batchSize = batchSize;
+        this.theta = theta;
+        this.gradient = new double[dimension];
+        this.residuals = new double[batchSize];
+        this.tracer = tracer;
+    }
+
+    public double[] getTheta() {
+        return theta;
+    }
+
+    /**
+     * Copies the given model into the theta buffer
+     */
+    public void setTheta(Vector model) {
+        for (int i = 0; i < theta.length; i++) {
+            theta[i] = model.get(i);
+        }
+    }
+
+    /**
+     * @return the sum of the squared prediction errors made since the last
+     * call, each one made before the update of its example
+     */
+    public double takeSquaredError() {
+        final double result = squaredError;
+        squaredError = 0.0;
+        return result;
+    }
+
+    /**
+     * Runs one pass over the partition, updating theta in place
+     */
+    public void epoch(PartitionStore partition) {
+        epoch(partition, 0, partition.getNumRows());
+    }
+
+    /**
+     * Runs one pass over the rows [fromRow, toRow) of the partition,
+     * updating theta in place
+     */
+    public void epoch(PartitionStore partition, int fromRow, int toRow) {
+        if (partition instanceof SparsePartitionStore) {
+            if (batchSize == 1) {
+                stochasticEpoch((SparsePartitionStore) partition, fromRow, toRow);
+            } else {
+                miniBatchEpoch((SparsePartitionStore) partition, fromRow, toRow);
+            }
+        } else if (batchSize == 1) {
+            stochasticEpoch((DensePartitionStore) partition, fromRow, toRow);
+        } else {
+            miniBatchEpoch((DensePartitionStore) partition, fromRow, toRow);
+        }
+    }
+
+    private void stochasticEpoch(DensePartitionStore partition, int fromRow, int toRow) {
+        final double[] features = partition.getFeatures();
+        final double[] labels = partition.getLabels();
+        final boolean tracing = tracer.isEnabled(Level.FINEST);
+        for (int row = fromRow, offset = fromRow * dimension; row < toRow; row++, offset += dimension) {
+            final double error = predict(features, offset) - labels[row];
+            squaredError += error * error;
+            rule.nextStep();
+            for (int i = 0; i < dimension; i++) {
+                rule.apply(theta, i, error * features[offset + i]);
+            }
+            if (intercept) {
+                rule.apply(theta, dimension, error);
+            }
+            if (tracing && tracer.sample(Level.FINEST)) {
+                tracer.trace("step", "row", row, "error", error);
+            }
+        }
+    }
+
+    private void miniBatchEpoch(DensePartitionStore partition, int fromRow, int toRow) {
+        final double[] features = partition.getFeatures();
+        final double[] labels = partition.getLabels();
+        final boolean tracing = tracer.isEnabled(Level.FINER);
+        for (int start = fromRow; start < toRow; start += batchSize) {
+            final int end = Math.min(toRow, start + batchSize);
+            final double residualSum = computeResiduals(features, labels, start, end - start);
+            Arrays.fill(gradient, 0.0);
+            accumulateGradient(features, start, end - start);
+            final double scale = 1.0 / (end - start);
+            rule.nextStep();
+            for (int i = 0; i < dimension; i++) {
+                rule.apply(theta, i, scale * gradient[i]);
+            }
+            if (intercept) {
+                rule.apply(theta, dimension, scale * residualSum);
+            }
+            if (tracing && tracer.sample(Level.FINER)) {
+                tracer.trace("batch", "start", start, "rows", end - start);
+            }
+        }
+    }
+
+    private void stochasticEpoch(SparsePartitionStore partition, int fromRow, int toRow) {
+        final int[] rowOffsets = partition.getRowOffsets();
+        final int[] indices = partition.getIndices();
+        final double[] values = partition.getValues();
+        final double[] labels = partition.getLabels();
+        final boolean tracing = tracer.isEnabled(Level.FINEST);
+        for (int row = fromRow; row < toRow; row++) {
+            final int begin = rowOffsets[row];
+            final int end = rowOffsets[row + 1];
+            final double error = predict(indices, values, begin, end) - labels[row];
+            squaredError += error * error;
+            rule.nextStep();
+            for (int k = begin; k < end; k++) {
+                rule.apply(theta, indices[k], error * values[k]);
+            }
+            if (intercept) {
+                rule.apply(theta, dimension, error);
+            }
+            if (tracing && tracer.sample(Level.FINEST)) {
+                tracer.trace("step", "row", row, "error", error);
+            }
+        }
+    }
+
+    /**
+     * The gradient accumulator is only written at the non-zeros of the
+     * batch, and it is applied and cleared at those same coordinates, so a
+     * batch costs its number of non-zeros rather than the dimension.
+     */
+    private void miniBatchEpoch(SparsePartitionStore partition, int fromRow, int toRow) {
+        final int[] rowOffsets = partition.getRowOffsets();
+        final int[] indices = partition.getIndices();
+        final double[] values = partition.getValues();
+        final double[] labels = partition.getLabels();
+        final boolean tracing = tracer.isEnabled(Level.FINER);
+        for (int start = fromRow; start < toRow; start += batchSize) {
+            final int end = Math.min(toRow, start + batchSize);
+            double biasGradient = 0.0;
+            for (int row = start; row < end; row++) {
+                final int begin = rowOffsets[row];
+                final int rowEnd = rowOffsets[row + 1];
+                final double error = predict(indices, values, begin, rowEnd) - labels[row];
+                squaredError += error * error;
+                biasGradient += error;
+                for (int k = begin; k < rowEnd; k++) {
+                    gradient[indices[k]] += error * values[k];
+                }
+            }
+            final double scale = 1.0 / (end - start);
+            rule.nextStep();
+            for (int k = rowOffsets[start]; k < rowOffsets[end]; k++) {
+                final int index = indices[k];
+                // An index repeated in the batch is applied at its first occurrence
+                if (gradient[index] != 0.0) {
+                    rule.apply(theta, index, scale * gradient[index]);
+                    gradient[index] = 0.0;
+                }
+            }
+            if (intercept) {
+                rule.apply(theta, dimension, scale * biasGradient);
+            }
+            if (tracing && tracer.sample(Level.FINER)) {
+                tracer.trace("batch", "start", start, "rows", end - start);
+            }
+        }
+    }
+
+    /**
+     * residuals[j] = theta . x - y for the rows [start, start + rows)
+     *
+     * @return the sum of the residuals, the gradient of the bias
+     */
+    private double computeResiduals(double[] features, double[] labels, int start, int rows) {
+        final double bias = bias();
+        int j = 0;
+        for (; j + ROW_BLOCK <= rows; j += ROW_BLOCK) {
+            final int o0 = (start + j) * dimension;
+            final int o1 = o0 + dimension;
+            final int o2 = o1 + dimension;
+            final int o3 = o2 + dimension;
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int i = 0; i < dimension; i++) {
+                final double t = theta[i];
+                s0 += t * features[o0 + i];
+                s1 += t * features[o1 + i];
+                s2 += t * features[o2 + i];
+                s3 += t * features[o3 + i];
+            }
+            residuals[j] = s0 + bias - labels[start + j];
+            residuals[j + 1] = s1 + bias - labels[start + j + 1];
+            residuals[j + 2] = s2 + bias - labels[start + j + 2];
+            residuals[j + 3] = s3 + bias - labels[start + j + 3];
+        }
+        for (; j < rows; j++) {
+            residuals[j] = predict(features, (start + j) * dimension) - labels[start + j];
+        }
+        double sum = 0.0;
+        for (j = 0; j < rows; j++) {
+            sum += residuals[j];
+            squaredError += residuals[j] * residuals[j];
+        }
+        return sum;
+    }
+
+    /**
+     * gradient += X' residuals for the rows [start, start + rows)
+     */
+    private void accumulateGradient(double[] features, int start, int rows) {
+        int j = 0;
+        for (; j + ROW_BLOCK <= rows; j += ROW_BLOCK) {
+            final int o0 = (start + j) * dimension;
+            final int o1 = o0 + dimension;
+            final int o2 = o1 + dimension;
+            final int o3 = o2 + dimension;
+            final double r0 = residuals[j];
+            final double r1 = residuals[j + 1];
+            final double r2 = residuals[j + 2];
+            final double r3 = residuals[j + 3];
+            for (int i = 0; i < dimension; i++) {
+                gradient[i] += r0 * features[o0 + i] + r1 * features[o1 + i]
+                        + r2 * features[o2 + i] + r3 * features[o3 + i];
+            }
+        }
+        for (; j < rows; j++) {
+            final int offset = (start + j) * dimension;
+            final double r = residuals[j];
+            for (int i = 0; i < dimension; i++) {
+                gradient[i] += r * features[offset + i];
+            }
+        }
+    }
+
+    /**
+     * @return the bias, 0 without an intercept
+     */
+    private double bias() {
+        return intercept ? theta[dimension] : 0.0;
+    }
+
+    /**
+     * theta . x for the row starting at offset
+     */
+    private double predict(double[] features, int offset) {
+        double sum = bias();
+        for (int i = 0; i < dimension; i++) {
+            sum += theta[i] * features[offset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * theta . x for the sparse row stored in [begin, end)
+     */
+    private double predict(int[] indices, double[] values, int begin, int end) {
+        double sum = bias();
+        for (int k = begin; k < end; k++) {
+            sum += theta[indices[k]] * values[k];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import java.util.Arrays;
+
+/**
+ * Compact store for the examples of one sparse partition in compressed row
+ * form: the non-zero entries of row r are indices/values
+ * [rowOffsets[r], rowOffsets[r + 1]). Only the non-zeros are stored, so the
+ * memory and the gradient work are proportional to them rather than to the
+ * dimension.
+ */
+public final class SparsePartitionStore implements PartitionStore {
+
+    private final int dimension;
+
+    private final int numRows;
+
+    /**
+     * numRows + 1 offsets into indices and values
+     */
+    private final int[] rowOffsets;
+
+    /**
+     * Feature index of every non-zero entry
+     */
+    private final int[] indices;
+
+    /**
+     * Value of every non-zero entry
+     */
+    private final double[] values;
+
+    private final double[] labels;
+
+    private SparsePartitionStore(int dimension, int numRows, int[] rowOffsets,
+                                 int[] indices, double[] values, double[] labels) {
+        this.dimension = dimension;
+        this.numRows = numRows;
+        this.rowOffsets = rowOffsets;
+        this.indices = indices;
+        this.values = values;
+        this.labels = labels;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return numRows == 0;
+    }
+
+    /**
+     * @return the offsets of the rows, not a copy
+     */
+    public int[] getRowOffsets() {
+        return rowOffsets;
+    }
+
+    /**
+     * @return the feature indices of the non-zeros, not a copy
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return the values of the non-zeros, not a copy
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    @Override
+    public double[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Only the stored non-zeros are transformed, so that the rows stay
+     * sparse. The features can therefore be scaled but not centered.
+     *
+     * @throws IllegalArgumentException if a feature mean is not 0
+     */
+    @Override
+    public void standardize(double[] mean, double[] scale, double labelMean, double labelScale) {
+        for (int i = 0; i < dimension; i++) {
+            if (mean[i] != 0.0) {
+                throw new IllegalArgumentException("Sparse features cannot be centered");
+            }
+        }
+        for (int k = 0; k < values.length; k++) {
+            values[k] /= scale[indices[k]];
+        }
+        for (int row = 0; row < numRows; row++) {
+            labels[row] = (labels[row] - labelMean) / labelScale;
+        }
+    }
+
+    /**
+     * Accumulates rows into growing primitive arrays. The arrays are trimmed
+     * to their exact size when the store is built.
+     */
+    public static final class Builder {
+
+        private static final int INITIAL_ROWS = 1024;
+        private static final int INITIAL_NON_ZEROS = 16 * INITIAL_ROWS;
+
+        private final int dimension;
+        private int[] rowOffsets = new int[INITIAL_ROWS + 1];
+        private int[] indices = new int[INITIAL_NON_ZEROS];
+        private double[] values = new double[INITIAL_NON_ZEROS];
+        private double[] labels = new double[INITIAL_ROWS];
+        private int numRows = 0;
+        private int numNonZeros = 0;
+
+        public Builder(int dimension) {
+            this.dimension = dimension;
+        }
+
+        /**
+         * Appends one row
+         *
+         * @param rowIndices the feature indices, each in [0, dimension)
+         * @param rowValues  the values at those indices
+         * @param length     the number of entries to read from both arrays
+         * @param label      the label of the row
+         */
+        public Builder addRow(int[] rowIndices, double[] rowValues, int length, double label) {
+            if (numRows == labels.length) {
+                labels = Arrays.copyOf(labels, labels.length * 2);
+                rowOffsets = Arrays.copyOf(rowOffsets, labels.length + 1);
+            }
+            if (numNonZeros + length > indices.length) {
+                int capacity = Math.max(indices.length * 2, numNonZeros + length);
+                indices = Arrays.copyOf(indices, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            for (int i = 0; i < length; i++) {
+                if (rowIndices[i] < 0 || rowIndices[i] >= dimension) {
+                    throw new IllegalArgumentException("Feature index " + rowIndices[i]
+                            + " is outside of [0, " + dimension + ")");
+                }
+            }
+            System.arraycopy(rowIndices, 0, indices, numNonZeros, length);
+            System.arraycopy(rowValues, 0, values, numNonZeros, length);
+            numNonZeros += length;
+            labels[numRows] = label;
+            ++numRows;
+            rowOffsets[numRows] = numNonZeros;
+            return this;
+        }
+
+        public SparsePartitionStore build() {
+            return new SparsePartitionStore(dimension, numRows,
+                    Arrays.copyOf(rowOffsets, numRows + 1),
+                    Arrays.copyOf(indices, numNonZeros),
+                    Arrays.copyOf(values, numNonZeros),
+                    Arrays.copyOf(labels, numRows));
+        }
+    }
+}
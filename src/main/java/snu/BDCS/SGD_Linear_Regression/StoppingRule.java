@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+/**
+ * Decides when the controller stops training, from the change of theta and
+ * the training RMSE of every round, and says why.
+ * <p/>
+ * Training converged once theta moves less than the tolerance in a round.
+ * With a loss tolerance, it also converged once the RMSE improves by less
+ * than that fraction of the previous RMSE, or reaches 0.
+ * <p/>
+ * A round in which the RMSE rises is not a small improvement. SGD noise or
+ * a high learning rate cause such rounds, and they do not stop training.
+ * When the RMSE rises for {@link #DIVERGENCE_PATIENCE} rounds in a row,
+ * or is no longer finite, training diverges. It then stops without having
+ * converged.
+ */
+public final class StoppingRule {
+
+    /**
+     * The number of rounds in a row the RMSE may rise before training is
+     * taken to diverge
+     */
+    public static final int DIVERGENCE_PATIENCE = 5;
+
+    private final double tolerance;
+
+    /**
+     * 0 disables the stops on the RMSE
+     */
+    private final double lossTolerance;
+
+    /**
+     * The RMSE of the previous round, NaN before the first one
+     */
+    private double previousRmse = Double.NaN;
+
+    /**
+     * The number of rounds in a row the RMSE rose
+     */
+    private int rises = 0;
+
+    private String reason;
+
+    private boolean converged = false;
+
+    /**
+     * @param maxEpochs     the number of rounds training stops after at the latest
+     * @param tolerance     the change of theta below which training converged
+     * @param lossTolerance the relative improvement of the RMSE below which
+     *                      training converged, 0 to only stop on theta
+     */
+    public StoppingRule(int maxEpochs, double tolerance, double lossTolerance) {
+        this.tolerance = tolerance;
+        this.lossTolerance = lossTolerance;
+        this.reason = "reached the maximum of " + maxEpochs + " epochs";
+    }
+
+    /**
+     * Compares the next round with the RMSE a resumed job reached
+     */
+    public void resume(double rmse) {
+        previousRmse = rmse;
+    }
+
+    /**
+     * @param change the L2 change of theta in the round
+     * @param rmse   the training RMSE of the round
+     * @return true if training stops after this round
+     */
+    public boolean update(double change, double rmse) {
+        final double previous = previousRmse;
+        previousRmse = rmse;
+        if (change < tolerance) {
+            return stop("theta changed by " + change + " < " + tolerance, true);
+        }
+        if (lossTolerance <= 0) {
+            return false;
+        }
+        if (Double.isNaN(rmse) || Double.isInfinite(rmse)) {
+            return stop("RMSE is " + rmse, false);
+        }
+        if (Double.isNaN(previous)) {
+            return false;
+        }
+        if (rmse > previous) {
+            ++rises;
+            if (rises >= DIVERGENCE_PATIENCE) {
+                return stop("RMSE rose for " + rises + " epochs in a row, to " + rmse, false);
+            }
+            return false;
+        }
+        rises = 0;
+        if (previous == 0) {
+            return stop("RMSE reached 0", true);
+        }
+        final double improvement = (previous - rmse) / previous;
+        if (improvement < lossTolerance) {
+            return stop("RMSE improved by " + improvement + " < " + lossTolerance, true);
+        }
+        return false;
+    }
+
+    /**
+     * @return why training stopped, or will stop once the maximum of epochs
+     * is reached
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return true if training stopped because it converged
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    private boolean stop(String why, boolean hasConverged) {
+        reason = why;
+        converged = hasConverged;
+        return true;
+    }
+}
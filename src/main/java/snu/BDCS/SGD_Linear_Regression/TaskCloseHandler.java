@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.task.events.CloseEvent;
+import com.microsoft.wake.EventHandler;
+
+import javax.inject.Inject;
+
+/**
+ * Lets the driver close a running task, as it does with all the tasks of
+ * the group when one of them is lost. The task registers the thread running
+ * its call(), which is interrupted so that it returns from the group
+ * communication operation it is blocked in. TANG injects the same instance
+ * into the task and as its close handler.
+ */
+public final class TaskCloseHandler implements EventHandler<CloseEvent> {
+
+    private volatile Thread taskThread;
+
+    private volatile boolean closed = false;
+
+    @Inject
+    public TaskCloseHandler() {
+    }
+
+    /**
+     * Registers the thread to interrupt on close, which is interrupted right
+     * away if the task was closed before it got there
+     */
+    public void register(Thread thread) {
+        taskThread = thread;
+        if (closed) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return true if the driver closed the task
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void onNext(CloseEvent event) {
+        closed = true;
+        Thread thread = taskThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
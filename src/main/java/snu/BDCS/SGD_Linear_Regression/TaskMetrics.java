@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.driver.task.TaskConfigurationOptions;
+import com.microsoft.reef.task.TaskMessage;
+import com.microsoft.reef.task.TaskMessageSource;
+import com.microsoft.reef.util.Optional;
+import com.microsoft.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The live metrics of a task: the latest value of every gauge the task
+ * sets, such as its epoch, the bytes its codec encoded and decoded so far,
+ * and a {@link LatencyHistogram} of every {@link Timer}, which times the
+ * parts of an epoch without allocating.
+ * <p/>
+ * They reach the driver as a task message with every heartbeat of the
+ * evaluator, as one key=value line with the latest duration of every
+ * timer, which {@link DriverMetrics} collects. The task returns the
+ * {@link #summary()} of the histograms with its result. TANG injects the
+ * same instance into the task, its codec and as its message source.
+ */
+public final class TaskMetrics implements TaskMessageSource {
+
+    public static final String SENT = "bytesSent";
+    public static final String RECEIVED = "bytesReceived";
+
+    private final String taskId;
+
+    private final Map<String, Object> gauges = new LinkedHashMap<>();
+
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /**
+     * The parts of an epoch, the same for the ComputeTasks and the controller
+     */
+    public enum Timer {
+        /**
+         * Sending or waiting for the broadcast, or pulling from the parameter server
+         */
+        BROADCAST("broadcast"),
+        /**
+         * The local epoch
+         */
+        COMPUTE("compute"),
+        /**
+         * Sending into or blocked receiving the reduce, or the parameter
+         * server round, including the encoding
+         */
+        REDUCE("reduce"),
+        /**
+         * Encoding a vector
+         */
+        ENCODE("encode"),
+        /**
+         * Decoding a vector
+         */
+        DECODE("decode");
+
+        private final String label;
+
+        Timer(String label) {
+            this.label = label;
+        }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Timer.values().length];
+
+    @Inject
+    public TaskMetrics(@Parameter(TaskConfigurationOptions.Identifier.class) String taskId) {
+        this.taskId = taskId;
+        for (int t = 0; t < histograms.length; t++) {
+            histograms[t] = new LatencyHistogram();
+        }
+    }
+
+    public synchronized void set(String key, Object value) {
+        gauges.put(key, value);
+    }
+
+    /**
+     * Records the time passed since the start
+     *
+     * @return the current System.nanoTime(), the start of the next timing
+     */
+    public long time(Timer timer, long startNanos) {
+        final long now = System.nanoTime();
+        histograms[timer.ordinal()].record(now - startNanos);
+        return now;
+    }
+
+    /**
+     * @return one line per timer that recorded anything, and the share of
+     * the local epochs in the time of the broadcast, local epoch and reduce
+     */
+    public String summary() {
+        final StringBuilder sb = new StringBuilder(256);
+        for (Timer timer : Timer.values()) {
+            final LatencyHistogram histogram = histograms[timer.ordinal()];
+            if (histogram.getCount() > 0) {
+                sb.append(timer.label).append(' ').append(histogram.summary()).append('\n');
+            }
+        }
+        final long round = histograms[Timer.BROADCAST.ordinal()].getTotal()
+                + histograms[Timer.COMPUTE.ordinal()].getTotal()
+                + histograms[Timer.REDUCE.ordinal()].getTotal();
+        if (histograms[Timer.COMPUTE.ordinal()].getCount() > 0 && round > 0) {
+            sb.append("compute share=").append(String.format(Locale.ROOT, "%.3f",
+                    (double) histograms[Timer.COMPUTE.ordinal()].getTotal() / round)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void sent(int bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    public void received(int bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    @Override
+    public Optional<TaskMessage> getMessage() {
+        final StringBuilder sb = new StringBuilder(128);
+        synchronized (this) {
+            for (Map.Entry<String, Object> gauge : gauges.entrySet()) {
+                sb.append(gauge.getKey()).append('=').append(gauge.getValue()).append(' ');
+            }
+        }
+        for (Timer timer : Timer.values()) {
+            final LatencyHistogram histogram = histograms[timer.ordinal()];
+            if (histogram.getCount() > 0) {
+                sb.append(timer.label).append("Millis=").append(histogram.getLast() / 1e6).append(' ');
+            }
+        }
+        sb.append(SENT).append('=').append(bytesSent.get())
+                .append(' ').append(RECEIVED).append('=').append(bytesReceived.get());
+        return Optional.of(TaskMessage.from(taskId, sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Parses a line of space separated key=value fields, as the task
+     * messages and reports are written
+     */
+    public static Map<String, String> parse(String line) {
+        final Map<String, String> fields = new LinkedHashMap<>();
+        for (String field : line.trim().split(" ")) {
+            final int eq = field.indexOf('=');
+            if (eq > 0) {
+                fields.put(field.substring(0, eq), field.substring(eq + 1));
+            }
+        }
+        return fields;
+    }
+}
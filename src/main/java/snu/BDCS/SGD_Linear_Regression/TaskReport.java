@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.driver.task.TaskConfigurationOptions;
+import com.microsoft.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The summary of a task run, written when the task ends as one key=value
+ * line to "[task id].report" in the metrics directory, which the benchmark
+ * client reads back. Nothing is written when no directory is configured.
+ * <p/>
+ * Every report carries the peak heap usage of the evaluator.
+ */
+public final class TaskReport {
+
+    private static final Logger LOG = Logger.getLogger(TaskReport.class.getName());
+
+    public static final String SUFFIX = ".report";
+
+    private final String taskId;
+
+    private final String directory;
+
+    @Inject
+    public TaskReport(@Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+                      @Parameter(LinearSGD_Driver.Parameters.MetricsPath.class) String directory) {
+        this.taskId = taskId;
+        this.directory = directory;
+    }
+
+    public boolean isEnabled() {
+        return !directory.isEmpty();
+    }
+
+    /**
+     * Writes the report, replacing the one of an earlier run of the task. A
+     * failed write is logged rather than failing the task.
+     *
+     * @param fields alternating keys and values
+     */
+    public void write(Object... fields) {
+        if (!isEnabled()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("task=").append(taskId);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            sb.append(' ').append(fields[i]).append('=').append(fields[i + 1]);
+        }
+        sb.append(" peakHeap=").append(peakHeapBytes()).append('\n');
+        try {
+            File dir = new File(directory);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            try (Writer out = new OutputStreamWriter(
+                    new FileOutputStream(new File(dir, taskId + SUFFIX)), StandardCharsets.UTF_8)) {
+                out.write(sb.toString());
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to write the report of " + taskId, e);
+        }
+    }
+
+    /**
+     * @return the sum of the peak usages of the heap memory pools of this JVM
+     */
+    public static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
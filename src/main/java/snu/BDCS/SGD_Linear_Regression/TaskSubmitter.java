@@ -8,25 +8,37 @@ package snu.BDCS.SGD_Linear_Regression;
  */
 
 import com.microsoft.reef.driver.context.ActiveContext;
+import com.microsoft.reef.driver.context.FailedContext;
+import com.microsoft.reef.driver.evaluator.FailedEvaluator;
+import com.microsoft.reef.driver.task.FailedTask;
+import com.microsoft.reef.driver.task.RunningTask;
 import com.microsoft.reef.driver.task.TaskConfiguration;
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import com.microsoft.reef.io.data.loading.api.DataLoadingService;
 import com.microsoft.reef.io.network.group.config.GroupOperators;
 import com.microsoft.reef.io.network.impl.BindNSToTask;
+import com.microsoft.reef.io.network.impl.UnbindNSFromTask;
 import com.microsoft.reef.io.network.naming.NameServer;
 import com.microsoft.reef.io.network.util.StringIdentifier;
 import com.microsoft.reef.io.network.util.StringIdentifierFactory;
+import com.microsoft.reef.task.Task;
 import com.microsoft.tang.Configuration;
 import com.microsoft.tang.JavaConfigurationBuilder;
 import com.microsoft.tang.Tang;
 import com.microsoft.tang.exceptions.BindException;
 import com.microsoft.wake.ComparableIdentifier;
 import com.microsoft.wake.EventHandler;
+import com.microsoft.wake.remote.Codec;
 import com.microsoft.wake.remote.NetUtils;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,9 +48,29 @@ import java.util.logging.Logger;
  * This is an event handler for events containing an iterable of running
  * evaluators. send, it creates the necessary structures to create the group
  * communication operator configurations and first submits the compute tasks.
+ * Compute tasks run on the contexts holding a loaded data partition, the
+ * controller runs on the compute context requested next to them.
  * <p/>
- * When all the compute tasks start, the driver will signal start of
- * controller through submitControlTask
+ * When all the compute tasks start, the controller is submitted through
+ * submitControlTask
+ * <p/>
+ * When a task fails or an evaluator is lost, the group can not go on: the
+ * remaining tasks are closed and, once all of them stopped, the group is
+ * rebuilt over the partitions that are left, on fresh ports, with a
+ * controller that resumes from the latest model. The average is weighted by
+ * the number of examples, so it is reweighted over the remaining partitions
+ * by itself. A partition whose evaluator comes back, as the data loading
+ * service requests a replacement, rejoins the group the same way.
+ * <p/>
+ * Every group also gets a port for the parameter server that the controller
+ * runs in the stale synchronous mode.
+ * <p/>
+ * With more than one run, the contexts are kept when a run completes and
+ * the next run is launched on them, from scratch, once every task of the
+ * previous one stopped. Its ComputeTasks train on the partitions cached in
+ * the contexts, and its tasks checkpoint to a directory of the run, so that
+ * a group rebuilt before the run's first checkpoint starts the run over
+ * rather than resuming from the previous one. The contexts are released when the last run completes.
  *
  * @author shravan
  */
@@ -50,25 +82,62 @@ public class TaskSubmitter implements EventHandler<Iterable<ActiveContext>> {
     private final Logger logger = Logger.getLogger(TaskSubmitter.class.getName());
 
     /**
-     * The number of compute tasks
+     * The contexts holding a loaded data partition, by the id of the
+     * compute task that trains on it
      */
-    private final int numberOfComputeTasks;
+    private final Map<String, ActiveContext> dataContexts = new LinkedHashMap<>();
 
     /**
-     * The ids of the compute tasks
+     * The ids of the compute tasks of the current group
      */
-    private final List<ComparableIdentifier> computeTaskIds;
+    private List<ComparableIdentifier> computeTaskIds = new ArrayList<>();
 
     /**
-     * The port numbers on which network service starts
+     * The tasks of the current group that were submitted and did not stop yet
      */
-    private final List<Integer> nsPorts;
+    private final Set<String> liveTasks = new HashSet<>();
+
+    /**
+     * The running tasks of the current group, closed to rebuild it
+     */
+    private final Map<String, RunningTask> runningTasks = new HashMap<>();
 
     private final StringIdentifierFactory factory = new StringIdentifierFactory();
     private final String nameServiceAddr;
     private final int nameServicePort;
     private final NameServer nameService;
 
+    /**
+     * Training parameters added to the configuration of every task
+     */
+    private final Configuration trainingConf;
+
+    /**
+     * Tells the data loaded contexts apart from the controller's context
+     */
+    private final DataLoadingService dataLoadingService;
+
+    /**
+     * The codec of the exchanged vectors, VectorCodec unless a reduced
+     * precision was asked for
+     */
+    private final Class<? extends Codec<Vector>> codecClass;
+
+    /**
+     * The most tasks that reduce into the same task
+     */
+    private final int fanIn;
+
+    /**
+     * The reduce tree of the current group of ComputeTasks
+     */
+    private ReduceTree reduceTree;
+
+    /**
+     * The number of failures to recover from before giving up
+     */
+    private final int maxFailures;
+
     /**
      * Id of controller
      */
@@ -76,9 +145,22 @@ public class TaskSubmitter implements EventHandler<Iterable<ActiveContext>> {
             .getNewInstance("ControllerTask");
 
     /**
-     * port of controller
+     * The first port of the network service, every group takes the next
+     * unused ones since the tasks of the previous group may still hold theirs
+     */
+    private static final int FIRST_PORT = 7000;
+
+    private int nextPort = FIRST_PORT;
+
+    /**
+     * The number of compute task ids given out so far
      */
-    private final int controllerPort = 7000;
+    private int lastComputeTask = 0;
+
+    /**
+     * The host:port of the controller's parameter server of the current group
+     */
+    private String parameterServerAddress;
 
     /**
      * The group communication operator configurations are managed through this
@@ -86,28 +168,79 @@ public class TaskSubmitter implements EventHandler<Iterable<ActiveContext>> {
     private GroupOperators operators;
 
     /**
-     * Handle to the running evaluator that should run the controller
+     * Handle to the running evaluator that should run the controller, null
+     * once it is lost
      */
     private ActiveContext controllerContext;
 
+    /**
+     * Whether the controller starts from the latest checkpoint, true for
+     * every rebuilt group
+     */
+    private boolean resume;
+
+    private boolean started = false;
+    private boolean controllerSubmitted = false;
+
+    /**
+     * The tasks of the group are being closed to rebuild it
+     */
+    private boolean recovering = false;
+
+    /**
+     * Training is over, successfully or not
+     */
+    private boolean done = false;
+
+    private int failures = 0;
+
+    /**
+     * The number of training runs on the contexts, and the current one, from 1
+     */
+    private final int runs;
+    private int run = 1;
+
+    /**
+     * The controller of the current run completed, the next one is launched
+     * once the ComputeTasks stopped as well
+     */
+    private boolean runCompleted = false;
+
     /**
      * Constructor
      *
      * @param numberOfComputeTasks
      * @param nameServicePort
+     * @param trainingConf
+     * @param dataLoadingService
+     * @param exchangePrecision
+     * @param fanIn
+     * @param resume             whether the first controller starts from the latest checkpoint
+     * @param maxFailures        the number of failures to recover from
+     * @param runs               the number of training runs on the same contexts
      */
-    public TaskSubmitter(int numberOfComputeTasks, int nameServicePort) {
-        this.numberOfComputeTasks = numberOfComputeTasks;
-        computeTaskIds = new ArrayList<>(numberOfComputeTasks);
-        nsPorts = new ArrayList<>(computeTaskIds.size());
-
-        logger.log(Level.INFO,
-                "Setting Up identifiers & ports for the network service to listen on");
-        for (int i = 1; i <= numberOfComputeTasks; i++) {
-            computeTaskIds.add((StringIdentifier) factory
-                    .getNewInstance("ComputeTask" + i));
-            nsPorts.add(controllerPort + i);
+    public TaskSubmitter(int numberOfComputeTasks, int nameServicePort, Configuration trainingConf,
+                         DataLoadingService dataLoadingService, String exchangePrecision, int fanIn,
+                         boolean resume, int maxFailures, int runs) {
+        // Checks the fan-in before the first group is launched
+        this.reduceTree = new ReduceTree(fanIn, 0);
+        if (runs < 1) {
+            throw new IllegalArgumentException("There must be at least one run: " + runs);
         }
+        this.runs = runs;
+        this.fanIn = fanIn;
+        this.trainingConf = trainingConf;
+        this.dataLoadingService = dataLoadingService;
+        this.resume = resume;
+        this.maxFailures = maxFailures;
+        if ("float64".equals(exchangePrecision)) {
+            codecClass = VectorCodec.class;
+        } else {
+            // Fail in the driver rather than in every task
+            QuantizedVectorCodec.parseMode(exchangePrecision);
+            codecClass = QuantizedVectorCodec.class;
+        }
+        logger.log(Level.INFO, "Expecting " + numberOfComputeTasks + " data partitions");
 
         // Starting Name Service
         nameServiceAddr = NetUtils.getLocalAddress();
@@ -120,76 +253,135 @@ public class TaskSubmitter implements EventHandler<Iterable<ActiveContext>> {
      * required for group communication
      */
     @Override
-    public void onNext(Iterable<ActiveContext> contexts) {
+    public synchronized void onNext(Iterable<ActiveContext> contexts) {
         logger.log(Level.INFO, "All context are running");
+        for (ActiveContext context : contexts) {
+            addContext(context);
+        }
+        started = true;
+        launch();
+    }
+
+    /**
+     * Takes a context that became active after the group was launched, the
+     * replacement of a lost one, and rebuilds the group with it
+     *
+     * @return false if the group was not launched yet, then the context
+     * comes with the others through {@link #onNext(Iterable)}
+     */
+    public synchronized boolean contextActive(ActiveContext context) {
+        if (!started) {
+            return false;
+        }
+        if (done) {
+            context.close();
+            return true;
+        }
+        addContext(context);
+        startRecovery("Context " + context.getId() + " joined");
+        relaunchIfStopped();
+        return true;
+    }
+
+    private void addContext(ActiveContext context) {
+        if (!dataLoadingService.isComputeContext(context)) {
+            ++lastComputeTask;
+            dataContexts.put("ComputeTask" + lastComputeTask, context);
+        } else if (controllerContext == null) {
+            controllerContext = context;
+        } else {
+            logger.log(Level.WARNING, "Releasing the spare compute context " + context.getId());
+            context.close();
+        }
+    }
+
+    /**
+     * Sets up the group communication of the current partitions and submits
+     * their compute tasks
+     */
+    private void launch() {
         logger.log(Level.INFO,
                 "Setting Up Structures for creating Group Comm Operator Configurations");
         // TODO: After we fix issue #143, we need not worry about
         // setting up id to port mappings. We will let the service
         // choose a random port whose mapping will be made available
         // through the Name Service
-        int runnEvalCnt = -1;
-        List<ActiveContext> contextList = new ArrayList<>(numberOfComputeTasks);
+        computeTaskIds = new ArrayList<>(dataContexts.size());
         Map<ComparableIdentifier, Integer> id2port = new HashMap<>();
-        for (ActiveContext context : contexts) {
-            if (runnEvalCnt != -1) {
-                contextList.add(context);
-                // TODO: Review after #143
-                final String hostAddr = context.getEvaluatorDescriptor().getNodeDescriptor()
-                        .getInetSocketAddress().getHostName();
-//				String hostAddr = Utils.getLocalAddress();
-                final int port = nsPorts.get(runnEvalCnt);
-                final ComparableIdentifier compTaskId = computeTaskIds.get(runnEvalCnt);
-                logger.log(Level.INFO, "Registering " + compTaskId + " with " + hostAddr + ":" + port);
-                nameService.register(compTaskId, new InetSocketAddress(hostAddr,
-                        port));
-                id2port.put(compTaskId, port);
-            } else {
-                controllerContext = context;
-                // TODO: Review after #143
-                final String hostAddr = context.getEvaluatorDescriptor().getNodeDescriptor()
-                        .getInetSocketAddress().getHostName();
-//				String hostAddr = Utils.getLocalAddress();
-                nameService.register(controllerId, new InetSocketAddress(
-                        hostAddr, controllerPort));
-                id2port.put(controllerId, controllerPort);
-            }
-            ++runnEvalCnt;
+        register(controllerId, controllerContext, id2port);
+        parameterServerAddress = hostOf(controllerContext) + ":" + nextPort++;
+        for (Map.Entry<String, ActiveContext> entry : dataContexts.entrySet()) {
+            final ComparableIdentifier compTaskId = (StringIdentifier) factory.getNewInstance(entry.getKey());
+            register(compTaskId, entry.getValue(), id2port);
+            computeTaskIds.add(compTaskId);
         }
 
         logger.log(Level.INFO, "Creating Operator Configs");
 
         // All the group comm operators that we will use
-        // will have VectorCodec and use VectorConcat as
+        // will have the same codec and use VectorAverage as
         // the reduce function. The id2port should not be
         // there but we need to hold on for 143's fix
-        operators = new GroupOperators(VectorCodec.class, VectorAverage.class,
+        operators = new GroupOperators(codecClass, VectorAverage.class,
                 nameServiceAddr, nameServicePort, id2port);
 
         // Fluent syntax for adding the group communication
         // operators that are needed for the job
-        operators.addScatter().setSender(controllerId)
-                .setReceivers(computeTaskIds);
-
         operators.addBroadCast().setSender(controllerId)
                 .setReceivers(computeTaskIds);
 
-        // Each operator can override the default setting
-        // Here the reduce function though same put it in
-        // to illustrate
-        operators.addReduce().setReceiver(controllerId)
-                .setSenders(computeTaskIds).setRedFuncClass(VectorAverage.class);
+        // The feature moments of the standardization are gathered at
+        // the controller, which combines them with FeatureMoments
+        operators.addGather().setReceiver(controllerId)
+                .setSenders(computeTaskIds);
+
+        // The reduce is a tree rooted at the controller, one Reduce
+        // per inner node, see ReduceTree. Node i is ComputeTask i - 1
+        reduceTree = new ReduceTree(fanIn, computeTaskIds.size());
+        for (int parent = 0; reduceTree.isInnerNode(parent); parent++) {
+            operators.addReduce().setReceiver(treeNode(parent))
+                    .setSenders(computeTaskIds.subList(reduceTree.firstChild(parent) - 1,
+                            reduceTree.lastChild(parent)))
+                    .setRedFuncClass(VectorAverage.class);
+        }
 
         // Launch ComputeTasks first
-        for (int i = 0; i < contextList.size(); i++) {
-            final ComparableIdentifier compTaskId = computeTaskIds.get(i);
-            contextList.get(i).submitTask(getComputeTaskConfig(compTaskId));
+        controllerSubmitted = false;
+        for (int i = 0; i < computeTaskIds.size(); i++) {
+            final String id = computeTaskIds.get(i).toString();
+            liveTasks.add(id);
+            dataContexts.get(id).submitTask(getComputeTaskConfig(i));
         }
 
         // All compute tasks have been launched
         // Wait for them to start running and
         // submitTask controller task later using controllerContext
+    }
 
+    /**
+     * Registers the task with the name service on a port not used before
+     */
+    private void register(ComparableIdentifier taskId, ActiveContext context,
+                          Map<ComparableIdentifier, Integer> id2port) {
+        final String hostAddr = hostOf(context);
+        final int port = nextPort++;
+        logger.log(Level.INFO, "Registering " + taskId + " with " + hostAddr + ":" + port);
+        nameService.unregister(taskId);
+        nameService.register(taskId, new InetSocketAddress(hostAddr, port));
+        id2port.put(taskId, port);
+    }
+
+    private static String hostOf(ActiveContext context) {
+        // TODO: Review after #143
+        return context.getEvaluatorDescriptor().getNodeDescriptor()
+                .getInetSocketAddress().getHostName();
+    }
+
+    /**
+     * @return the id of the task at the node of the reduce tree
+     */
+    private ComparableIdentifier treeNode(int node) {
+        return node == 0 ? controllerId : computeTaskIds.get(node - 1);
     }
 
     /**
@@ -197,21 +389,24 @@ public class TaskSubmitter implements EventHandler<Iterable<ActiveContext>> {
      * <p/>
      * Given the task id, the {@link GroupOperators} object will get you the
      * {@link com.microsoft.tang.Configuration} needed for Group Communication Operators on that
-     * task
+     * task. Inner nodes of the reduce tree average their children in with
+     * {@link PartialAverage.Children}
      *
-     * @param compTaskId
-     * @return
+     * @param index the index of the task in computeTaskIds
      */
-    private Configuration getComputeTaskConfig(final ComparableIdentifier compTaskId) {
+    private Configuration getComputeTaskConfig(final int index) {
+        final ComparableIdentifier compTaskId = computeTaskIds.get(index);
         try {
             // System.out.println(ConfigurationFile.toConfigurationString(operators.getConfig(compTaskId)));
             final JavaConfigurationBuilder b = Tang.Factory.getTang().newConfigurationBuilder();
             b.addConfiguration(operators.getConfig(compTaskId));
-            b.addConfiguration(TaskConfiguration.CONF
-                    .set(TaskConfiguration.IDENTIFIER, compTaskId.toString())
-                    .set(TaskConfiguration.TASK, ComputeTask.class)
-                    .set(TaskConfiguration.ON_TASK_STARTED, BindNSToTask.class)
-                    .build());
+            b.addConfiguration(trainingConf);
+            b.addConfiguration(getTaskConfig(compTaskId, ComputeTask.class));
+            if (reduceTree.isInnerNode(index + 1)) {
+                b.bindImplementation(PartialAverage.class, PartialAverage.Children.class);
+            }
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.ParameterServerAddress.class, parameterServerAddress);
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.Run.class, String.valueOf(run));
             return b.build();
         } catch (BindException e) {
             logger.log(
@@ -222,20 +417,42 @@ public class TaskSubmitter implements EventHandler<Iterable<ActiveContext>> {
         }
     }
 
+    /**
+     * The task configuration shared by the compute tasks and the controller,
+     * which the driver can close, which send their metrics with the
+     * heartbeats and which release their network service binding when they
+     * stop
+     */
+    private Configuration getTaskConfig(ComparableIdentifier taskId, Class<? extends Task> taskClass)
+            throws BindException {
+        return TaskConfiguration.CONF
+                .set(TaskConfiguration.IDENTIFIER, taskId.toString())
+                .set(TaskConfiguration.TASK, taskClass)
+                .set(TaskConfiguration.ON_TASK_STARTED, BindNSToTask.class)
+                .set(TaskConfiguration.ON_TASK_STOP, UnbindNSFromTask.class)
+                .set(TaskConfiguration.ON_CLOSE, TaskCloseHandler.class)
+                .set(TaskConfiguration.ON_SEND_MESSAGE, TaskMetrics.class)
+                .build();
+    }
+
     /**
      * Submits the {@link ControllerTask} using the {@link RunningEvaluator}
      * stored. We get the group communication configuration from
      * {@link GroupOperators} object
      */
-    public void submitControlTask() {
+    private void submitControlTask() {
         try {
             final JavaConfigurationBuilder b = Tang.Factory.getTang().newConfigurationBuilder();
             b.addConfiguration(operators.getConfig(controllerId));
-            b.addConfiguration(TaskConfiguration.CONF
-                    .set(TaskConfiguration.IDENTIFIER, controllerId.toString())
-                    .set(TaskConfiguration.TASK, ControllerTask.class)
-                    .set(TaskConfiguration.ON_TASK_STARTED, BindNSToTask.class)
-                    .build());
+            b.addConfiguration(trainingConf);
+            b.addConfiguration(getTaskConfig(controllerId, ControllerTask.class));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.Resume.class, String.valueOf(resume));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.ParameterServerAddress.class, parameterServerAddress);
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.GroupSize.class,
+                    String.valueOf(computeTaskIds.size()));
+            b.bindNamedParameter(LinearSGD_Driver.Parameters.Run.class, String.valueOf(run));
+            controllerSubmitted = true;
+            liveTasks.add(controllerId.toString());
             controllerContext.submitTask(b.build());
         } catch (BindException e) {
             logger.log(
@@ -246,6 +463,166 @@ public class TaskSubmitter implements EventHandler<Iterable<ActiveContext>> {
         }
     }
 
+    /**
+     * Keeps the running task to close it on a failure, and submits the
+     * controller once all the compute tasks of the group are running
+     */
+    public synchronized void taskRunning(RunningTask task) {
+        if (recovering || done) {
+            // Submitted before the group was given up
+            task.close();
+            return;
+        }
+        runningTasks.put(task.getId(), task);
+        if (!controllerSubmitted && runningTasks.size() == computeTaskIds.size()) {
+            // All compute tasks are running - launch controller task
+            submitControlTask();
+        }
+    }
+
+    /**
+     * Called when a task completed, which it also does when it was closed
+     *
+     * @return true if the context of the task is to be released, false if
+     * it is kept for the rebuilt group or the next run
+     */
+    public synchronized boolean taskCompleted(String id) {
+        runningTasks.remove(id);
+        liveTasks.remove(id);
+        if (recovering) {
+            relaunchIfStopped();
+            return false;
+        }
+        if (run < runs && !done) {
+            if (controllerCompleted(id)) {
+                runCompleted = true;
+            }
+            if (runCompleted && liveTasks.isEmpty()) {
+                nextRun();
+            }
+            return false;
+        }
+        if (controllerCompleted(id)) {
+            done = true;
+        }
+        return true;
+    }
+
+    /**
+     * Called when a task failed on an evaluator that is still alive
+     */
+    public synchronized void taskFailed(FailedTask task) {
+        runningTasks.remove(task.getId());
+        liveTasks.remove(task.getId());
+        startRecovery("Task " + task.getId() + " failed: " + task.getMessage());
+        if (task.getActiveContext().isPresent() && done) {
+            task.getActiveContext().get().close();
+        }
+        relaunchIfStopped();
+    }
+
+    /**
+     * Called when an evaluator is lost, with its contexts and task
+     */
+    public synchronized void evaluatorFailed(FailedEvaluator evaluator) {
+        List<String> lost = new ArrayList<>();
+        for (Map.Entry<String, ActiveContext> entry : dataContexts.entrySet()) {
+            if (entry.getValue().getEvaluatorId().equals(evaluator.getId())) {
+                lost.add(entry.getKey());
+            }
+        }
+        if (controllerContext != null && controllerContext.getEvaluatorId().equals(evaluator.getId())) {
+            controllerContext = null;
+            lost.add(controllerId.toString());
+        }
+        for (String id : lost) {
+            dataContexts.remove(id);
+            runningTasks.remove(id);
+            liveTasks.remove(id);
+        }
+        for (FailedContext context : evaluator.getFailedContextList()) {
+            logger.log(Level.WARNING, "Lost context " + context.getId());
+        }
+        startRecovery("Evaluator " + evaluator.getId() + " of " + lost + " failed");
+        relaunchIfStopped();
+    }
+
+    /**
+     * Closes the tasks of the group to rebuild it, or gives up when it can
+     * not be rebuilt
+     */
+    private void startRecovery(String reason) {
+        if (!started || done) {
+            return;
+        }
+        if (recovering) {
+            logger.log(Level.WARNING, reason + " while rebuilding the group");
+            return;
+        }
+        ++failures;
+        if (controllerContext == null || dataContexts.isEmpty() || failures > maxFailures) {
+            logger.log(Level.SEVERE, reason + ", giving up after " + failures
+                    + " failures; the job can be restarted with -resume true");
+            done = true;
+            for (RunningTask task : runningTasks.values()) {
+                task.close();
+            }
+            releaseIdleContexts();
+            return;
+        }
+        logger.log(Level.WARNING, reason + ", rebuilding the group over "
+                + dataContexts.size() + " partitions");
+        recovering = true;
+        for (RunningTask task : runningTasks.values()) {
+            task.close();
+        }
+    }
+
+    /**
+     * Launches the rebuilt group once every task of the previous one stopped
+     */
+    private void relaunchIfStopped() {
+        if (!recovering || !liveTasks.isEmpty()) {
+            return;
+        }
+        recovering = false;
+        runningTasks.clear();
+        if (runCompleted) {
+            // The run was over already, only its ComputeTasks were left
+            nextRun();
+            return;
+        }
+        resume = true;
+        launch();
+    }
+
+    /**
+     * Launches the next run on the contexts of the previous one, starting
+     * over from a fresh model
+     */
+    private void nextRun() {
+        runCompleted = false;
+        runningTasks.clear();
+        ++run;
+        resume = false;
+        logger.log(Level.INFO, "Starting run " + run + " of " + runs + " on the same contexts");
+        launch();
+    }
+
+    /**
+     * Closes the contexts that run no task when training is given up
+     */
+    private void releaseIdleContexts() {
+        for (Map.Entry<String, ActiveContext> entry : dataContexts.entrySet()) {
+            if (!liveTasks.contains(entry.getKey())) {
+                entry.getValue().close();
+            }
+        }
+        if (controllerContext != null && !liveTasks.contains(controllerId.toString())) {
+            controllerContext.close();
+        }
+    }
+
     /**
      * Check if the id of the completed task matches that of the controller
      *
@@ -257,4 +634,3 @@ public class TaskSubmitter implements EventHandler<Iterable<ActiveContext>> {
     }
 
 }
-
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.driver.task.TaskConfigurationOptions;
+import com.microsoft.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Level-gated, sampled tracing for the training hot paths. Tracing is off by
+ * default; when enabled, only the requested fraction of the sampled events
+ * is written, as one key=value line per event, to a buffered file owned by
+ * the task ("trace-[task id].log" in the evaluator's working directory).
+ * <p/>
+ * Callers check {@link #isEnabled(Level)} or {@link #sample(Level)} before
+ * building a message so that a disabled tracer costs one branch. A tracer
+ * is shared by the threads of a task: every thread samples with its own
+ * state and the writes are synchronized.
+ */
+public final class TaskTracer {
+
+    private static final Logger LOG = Logger.getLogger(TaskTracer.class.getName());
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String taskId;
+
+    /**
+     * Events below this level are dropped; Level.OFF disables tracing
+     */
+    private final int threshold;
+
+    private final double sampleRate;
+
+    /**
+     * xorshift state of the sampler of every thread
+     */
+    private final ThreadLocal<long[]> seed;
+
+    /**
+     * Opened on the first traced event
+     */
+    private Writer sink;
+
+    @Inject
+    public TaskTracer(@Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+                      @Parameter(LinearSGD_Driver.Parameters.TraceLevel.class) String level,
+                      @Parameter(LinearSGD_Driver.Parameters.TraceSampleRate.class) double sampleRate) {
+        this.taskId = taskId;
+        this.threshold = Level.parse(level).intValue();
+        this.sampleRate = sampleRate;
+        final long taskSeed = taskId.hashCode();
+        this.seed = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                return new long[]{(taskSeed ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) | 1L};
+            }
+        };
+    }
+
+    /**
+     * @return true if events of this level are traced at all
+     */
+    public boolean isEnabled(Level level) {
+        return threshold != Level.OFF.intValue() && level.intValue() >= threshold;
+    }
+
+    /**
+     * @return true if this occurrence of an event of the given level should be traced
+     */
+    public boolean sample(Level level) {
+        if (!isEnabled(level)) {
+            return false;
+        }
+        if (sampleRate >= 1.0) {
+            return true;
+        }
+        final long[] state = seed.get();
+        long x = state[0];
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        state[0] = x;
+        return (x >>> 11) * 0x1.0p-53 < sampleRate;
+    }
+
+    /**
+     * Writes one event
+     *
+     * @param event  the event name
+     * @param fields alternating keys and values
+     */
+    public synchronized void trace(String event, Object... fields) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("time=").append(System.nanoTime())
+                .append(" task=").append(taskId)
+                .append(" event=").append(event);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            sb.append(' ').append(fields[i]).append('=').append(fields[i + 1]);
+        }
+        sb.append('\n');
+        try {
+            if (sink == null) {
+                sink = new BufferedWriter(new FileWriter("trace-" + taskId + ".log"), BUFFER_SIZE);
+            }
+            sink.write(sb.toString());
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to write the trace of " + taskId, e);
+        }
+    }
+
+    /**
+     * Flushes and closes the sink, if anything was traced
+     */
+    public synchronized void close() {
+        if (sink == null) {
+            return;
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to close the trace of " + taskId, e);
+        }
+        sink = null;
+    }
+}
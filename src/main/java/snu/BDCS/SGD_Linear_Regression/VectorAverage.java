@@ -4,49 +4,67 @@
 package snu.BDCS.SGD_Linear_Regression;
 
 import com.microsoft.reef.io.network.group.operators.Reduce;
-import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
 import com.microsoft.reef.examples.groupcomm.matmul.Vector;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.logging.Level;
 
 /**
- * exampleSet Reduce function that concatenates an iterable of vectors into a single
- * vector
+ * Reduce function that averages the theta values and the losses of
+ * {@link ModelMessage}s, weighted by the number of examples each of them was
+ * trained on. The
+ * result is again a message, carrying the total weight, so that it can be
+ * reduced further up the aggregation tree.
+ * <p/>
+ * The mean is updated incrementally, so the messages are read once and no
+ * final division is needed. Messages of weight 0, such as the ones of empty
+ * partitions, do not change the mean. Without any message, such as from a
+ * reduce without senders, there is nothing to average and the result is
+ * null.
  *
  * @author shravan
  */
 public class VectorAverage implements Reduce.ReduceFunction<Vector> {
 
+    private final TaskTracer tracer;
+
     @Inject
-    public VectorAverage() {
+    public VectorAverage(TaskTracer tracer) {
+        this.tracer = tracer;
     }
 
-    private boolean isNullVector(Vector vector) {
-        for (int i = 0; i < vector.size(); i++) {
-            if (vector.get(i) != 0.0)
-                return false;
-        }
-        return true;
-    }
     @Override
     public Vector apply(Iterable<Vector> elements) {
-        double num_total = 0;
-        Vector result = new DenseVector(6);
+        double total = 0;
+        Vector result = null;
+        int averaged = 0;
         for (Vector element : elements) {
-            if(!isNullVector(element)) {
-                result.add(element);
-                num_total++;
+            if (element == null) {
+                continue;
             }
+            if (result == null) {
+                result = new ModelMessage.Model(element.size());
+                // Everything but the weight in the last slot
+                averaged = element.size() - 1;
+            }
+            double weight = ModelMessage.weight(element);
+            if (weight > 0) {
+                total += weight;
+                double ratio = weight / total;
+                for (int i = 0; i < averaged; i++) {
+                    double mean = result.get(i);
+                    result.set(i, mean + ratio * (element.get(i) - mean));
+                }
+            }
+        }
+        if (result == null) {
+            return null;
         }
-        System.out.print("The Number of Received vectors: " + num_total+"\n");
-        int i = 0;
-        for (; i<6; i++) {
-            System.out.print("Sum of theta[" + i + "] =" + result.get(i) + "\n");
-            result.set(i, result.get(i) / num_total);
+        result.set(averaged, total);
+        if (tracer.sample(Level.FINER)) {
+            tracer.trace("reduce", "weight", total);
         }
         return result;
     }
 
-}
\ No newline at end of file
+}
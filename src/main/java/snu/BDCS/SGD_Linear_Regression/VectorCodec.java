@@ -8,50 +8,204 @@ import com.microsoft.reef.examples.groupcomm.matmul.Vector;
 import com.microsoft.wake.remote.Codec;
 
 import javax.inject.Inject;
-import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 /**
- * Codec for the Vector type Uses Data*Stream
+ * Codec for the Vector type Uses ByteBuffer views
+ * <p/>
+ * The size is followed by the number of non-zero entries, their indices and
+ * then their values when that is shorter than writing every value, or by -1
+ * and all the values otherwise. Buffers are allocated with their exact size
+ * and the payload is moved through Int/DoubleBuffer views of the bytes.
+ * <p/>
+ * Besides the Codec methods used by the group communication, the static
+ * methods encode from and decode into primitive arrays with bulk transfers,
+ * and {@link #wrap(byte[])} reads dense values in place without copying.
+ * <p/>
+ * The bytes the group communication encodes and decodes, and the time it
+ * takes, are counted in the {@link TaskMetrics} of the task.
  *
  * @author shravan
  */
 public class VectorCodec implements Codec<Vector> {
+
+    /**
+     * Written in place of the non-zero count for dense encodings
+     */
+    private static final int DENSE = -1;
+
+    /**
+     * The size and the non-zero count
+     */
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * Little endian, so that bulk transfers are plain copies on common hardware
+     */
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Counts the bytes through the Codec methods, null outside of a task
+     */
+    private final TaskMetrics metrics;
+
     /**
      * This class is instantiated by TANG
      */
     @Inject
+    public VectorCodec(TaskMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * A codec that counts nothing
+     */
     public VectorCodec() {
-        // Intentionally blank
+        this.metrics = null;
     }
 
     @Override
     public Vector decode(byte[] data) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        Vector result;
-        try (DataInputStream dais = new DataInputStream(bais)) {
-            int size = dais.readInt();
-            result = new DenseVector(size);
+        final long start = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ORDER);
+        int size = buffer.getInt();
+        int nonZeros = buffer.getInt();
+        Vector result = new DenseVector(size);
+        if (nonZeros == DENSE) {
+            DoubleBuffer values = buffer.asDoubleBuffer();
             for (int i = 0; i < size; i++)
-                result.set(i, dais.readDouble());
-        } catch (IOException e) {
-            throw new RuntimeException(e.getCause());
+                result.set(i, values.get(i));
+        } else {
+            IntBuffer indices = buffer.asIntBuffer();
+            buffer.position(buffer.position() + nonZeros * 4);
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            for (int k = 0; k < nonZeros; k++)
+                result.set(indices.get(k), values.get(k));
+        }
+        if (metrics != null) {
+            metrics.received(data.length);
+            metrics.time(TaskMetrics.Timer.DECODE, start);
         }
         return result;
     }
 
     @Override
     public byte[] encode(Vector vec) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(vec.size()
-                * Double.SIZE);
-        try (DataOutputStream daos = new DataOutputStream(baos)) {
-            daos.writeInt(vec.size());
-            for (int i = 0; i < vec.size(); i++) {
-                daos.writeDouble(vec.get(i));
+        final long start = System.nanoTime();
+        int size = vec.size();
+        int nonZeros = 0;
+        for (int i = 0; i < size; i++) {
+            if (vec.get(i) != 0.0)
+                nonZeros++;
+        }
+        ByteBuffer buffer = allocate(size, nonZeros);
+        if (isSparse(size, nonZeros)) {
+            IntBuffer indices = buffer.asIntBuffer();
+            buffer.position(buffer.position() + nonZeros * 4);
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            for (int i = 0; i < size; i++) {
+                double value = vec.get(i);
+                if (value != 0.0) {
+                    indices.put(i);
+                    values.put(value);
+                }
+            }
+        } else {
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            for (int i = 0; i < size; i++)
+                values.put(i, vec.get(i));
+        }
+        if (metrics != null) {
+            metrics.sent(buffer.capacity());
+            metrics.time(TaskMetrics.Timer.ENCODE, start);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Encodes a primitive array in the same format as {@link #encode(Vector)}
+     */
+    public static byte[] encode(double[] vec) {
+        int nonZeros = 0;
+        for (double value : vec) {
+            if (value != 0.0)
+                nonZeros++;
+        }
+        ByteBuffer buffer = allocate(vec.length, nonZeros);
+        if (isSparse(vec.length, nonZeros)) {
+            IntBuffer indices = buffer.asIntBuffer();
+            buffer.position(buffer.position() + nonZeros * 4);
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            for (int i = 0; i < vec.length; i++) {
+                if (vec[i] != 0.0) {
+                    indices.put(i);
+                    values.put(vec[i]);
+                }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e.getCause());
+        } else {
+            buffer.asDoubleBuffer().put(vec);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes into an existing primitive array of the encoded size
+     */
+    public static void decodeInto(byte[] data, double[] target) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ORDER);
+        int size = buffer.getInt();
+        if (size != target.length) {
+            throw new IllegalArgumentException("Encoded size " + size
+                    + " does not match the target size " + target.length);
+        }
+        int nonZeros = buffer.getInt();
+        if (nonZeros == DENSE) {
+            buffer.asDoubleBuffer().get(target);
+        } else {
+            Arrays.fill(target, 0.0);
+            IntBuffer indices = buffer.asIntBuffer();
+            buffer.position(buffer.position() + nonZeros * 4);
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            for (int k = 0; k < nonZeros; k++)
+                target[indices.get(k)] = values.get(k);
         }
-        return baos.toByteArray();
     }
 
+    /**
+     * @return a read-only view of the values of a dense encoding, backed by
+     * the given bytes rather than a copy of them
+     */
+    public static DoubleBuffer wrap(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ORDER);
+        int size = buffer.getInt();
+        if (buffer.getInt() != DENSE) {
+            throw new IllegalArgumentException("Only dense encodings can be wrapped");
+        }
+        DoubleBuffer values = buffer.asDoubleBuffer().asReadOnlyBuffer();
+        values.limit(size);
+        return values;
+    }
+
+    /**
+     * An (int, double) pair costs 12 bytes against 8 for a dense value
+     */
+    private static boolean isSparse(int size, int nonZeros) {
+        return nonZeros * 12 < size * 8;
+    }
+
+    /**
+     * @return a buffer of exactly the encoded size, positioned after the header
+     */
+    private static ByteBuffer allocate(int size, int nonZeros) {
+        boolean sparse = isSparse(size, nonZeros);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (sparse ? nonZeros * 12 : size * 8))
+                .order(ORDER);
+        buffer.putInt(size);
+        buffer.putInt(sparse ? nonZeros : DENSE);
+        return buffer;
+    }
 }
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the moments of a partition against their definition, and that the
+ * moments of the parts of a partition merge into the moments of the whole.
+ */
+public class FeatureMomentsTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testMomentsOfPartition() {
+        final double[][] rows = {{1, 10}, {2, 20}, {6, 30}};
+        final double[] labels = {-1, 0, 4};
+        final double[] moments = VectorCodecTest.toArray(FeatureMoments.of(SGDUpdaterTest.dense(rows, labels)));
+        // Means, M2s, label mean and M2, count
+        assertArrayEquals(new double[]{3, 20, 14, 200, 1, 14, 3}, moments, DELTA);
+    }
+
+    @Test
+    public void testSparseMomentsMatchDense() {
+        final double[][] rows = SGDUpdaterTest.sparsify(SGDUpdaterTest.randomRows(new Random(1), 50, 6), new Random(2));
+        final double[] labels = SGDUpdaterTest.randomLabels(new Random(3), rows.length);
+        assertArrayEquals(VectorCodecTest.toArray(FeatureMoments.of(SGDUpdaterTest.dense(rows, labels))),
+                VectorCodecTest.toArray(FeatureMoments.of(SGDUpdaterTest.sparse(rows, labels))), DELTA);
+    }
+
+    @Test
+    public void testMergeMatchesWhole() {
+        final Random random = new Random(4);
+        final double[][] rows = SGDUpdaterTest.randomRows(random, 90, 5);
+        for (double[] row : rows) {
+            // Far from 0, where sums of squares would lose the variance
+            row[0] += 1e6;
+        }
+        final double[] labels = SGDUpdaterTest.randomLabels(random, rows.length);
+        final Vector whole = FeatureMoments.of(SGDUpdaterTest.dense(rows, labels));
+
+        final int[] bounds = {0, 7, 40, 41, 90};
+        final Vector[] parts = new Vector[bounds.length - 1];
+        for (int p = 0; p < parts.length; p++) {
+            parts[p] = FeatureMoments.of(SGDUpdaterTest.dense(
+                    Arrays.copyOfRange(rows, bounds[p], bounds[p + 1]),
+                    Arrays.copyOfRange(labels, bounds[p], bounds[p + 1])));
+        }
+        final FeatureMoments merge = new FeatureMoments();
+        final Vector flat = merge.apply(Arrays.asList(parts));
+        final Vector tree = merge.apply(Arrays.asList(
+                merge.apply(Arrays.asList(parts[0], parts[1])),
+                merge.apply(Arrays.asList(parts[2], parts[3]))));
+        for (int i = 0; i < whole.size(); i++) {
+            final double tolerance = DELTA * Math.max(1.0, Math.abs(whole.get(i)));
+            assertEquals("moment " + i, whole.get(i), flat.get(i), tolerance);
+            assertEquals("moment " + i, whole.get(i), tree.get(i), tolerance);
+        }
+    }
+
+    @Test
+    public void testEmptyPartitionDoesNotChangeMoments() {
+        final double[][] rows = SGDUpdaterTest.randomRows(new Random(5), 12, 3);
+        final double[] labels = SGDUpdaterTest.randomLabels(new Random(6), rows.length);
+        final Vector moments = FeatureMoments.of(SGDUpdaterTest.dense(rows, labels));
+        final Vector empty = FeatureMoments.of(new DensePartitionStore.Builder(3).build());
+        final FeatureMoments merge = new FeatureMoments();
+        final double[] expected = VectorCodecTest.toArray(moments);
+        assertArrayEquals(expected, VectorCodecTest.toArray(merge.apply(Arrays.asList(empty, moments))), DELTA);
+        assertArrayEquals(expected, VectorCodecTest.toArray(merge.apply(Arrays.asList(moments, empty))), DELTA);
+    }
+}
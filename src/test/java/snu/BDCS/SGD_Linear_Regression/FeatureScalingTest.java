@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a partition cached under one standardization can be taken to
+ * another with {@link FeatureScaling#relativeTo(FeatureScaling)} and
+ * {@link PartitionCache#rescale(FeatureScaling)}.
+ */
+public class FeatureScalingTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static final int DIMENSION = 2;
+
+    private static final double[][] ROWS = {{1.0, 10.0}, {2.0, -4.0}, {-3.0, 0.5}, {7.0, 2.0}};
+
+    private static final double[] LABELS = {3.0, -1.0, 0.0, 12.0};
+
+    private static DensePartitionStore raw() {
+        final DensePartitionStore.Builder builder = new DensePartitionStore.Builder(DIMENSION);
+        for (int row = 0; row < ROWS.length; row++) {
+            builder.addRow(ROWS[row].clone(), LABELS[row]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a scaling with the given means and scales, the last of each
+     * for the label
+     */
+    private static FeatureScaling scaling(double[] mean, double[] scale) {
+        final Vector vector = new DenseVector(2 * DIMENSION + 2);
+        for (int i = 0; i < DIMENSION; i++) {
+            vector.set(i, mean[i]);
+            vector.set(DIMENSION + i, scale[i]);
+        }
+        vector.set(2 * DIMENSION, mean[DIMENSION]);
+        vector.set(2 * DIMENSION + 1, scale[DIMENSION]);
+        return FeatureScaling.fromVector(vector);
+    }
+
+    private static final FeatureScaling A = scaling(new double[]{1.5, -2.0, 4.0}, new double[]{2.0, 0.5, 3.0});
+
+    private static void assertSameValues(DensePartitionStore expected, DensePartitionStore actual) {
+        assertArrayEquals(expected.getFeatures(), actual.getFeatures(), DELTA);
+        assertArrayEquals(expected.getLabels(), actual.getLabels(), DELTA);
+    }
+
+    @Test
+    public void testRelativeToMatchesApplyingDirectly() {
+        final FeatureScaling b = FeatureScaling.fromMoments(FeatureMoments.of(raw()), true);
+        final DensePartitionStore rescaled = raw();
+        A.apply(rescaled);
+        b.relativeTo(A).apply(rescaled);
+        final DensePartitionStore expected = raw();
+        b.apply(expected);
+        assertSameValues(expected, rescaled);
+    }
+
+    @Test
+    public void testRelativeToItselfIsIdentity() {
+        assertTrue(A.relativeTo(A).isIdentity());
+        assertFalse(A.isIdentity());
+        assertTrue(FeatureScaling.identity(DIMENSION).isIdentity());
+    }
+
+    @Test
+    public void testCacheRescalesFromOneScalingToAnother() {
+        final PartitionCache cache = new PartitionCache();
+        final DensePartitionStore cached = raw();
+        cache.put("csv", DIMENSION, cached);
+        // A scaling without centering, as for sparse input
+        final FeatureScaling b = FeatureScaling.fromMoments(cache.moments(), false);
+        cache.rescale(A);
+        cache.rescale(b);
+        final DensePartitionStore expected = raw();
+        b.apply(expected);
+        assertSameValues(expected, cached);
+    }
+
+    @Test
+    public void testCacheRescalesBackToRaw() {
+        final PartitionCache cache = new PartitionCache();
+        final DensePartitionStore cached = raw();
+        cache.put("csv", DIMENSION, cached);
+        cache.rescale(A);
+        cache.rescale(null);
+        assertSameValues(raw(), cached);
+    }
+
+    @Test
+    public void testMomentsAreOfTheParsedPartition() {
+        final PartitionCache cache = new PartitionCache();
+        cache.put("csv", DIMENSION, raw());
+        cache.rescale(A);
+        final Vector moments = cache.moments();
+        final Vector expected = FeatureMoments.of(raw());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(Math.abs(expected.get(i) - moments.get(i)) < DELTA);
+        }
+    }
+}
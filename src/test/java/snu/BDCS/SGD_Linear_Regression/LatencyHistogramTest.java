@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the buckets and the percentiles of {@link LatencyHistogram}, which
+ * the /metrics endpoint and the benchmark CSV report.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallDurationsHaveTheirOwnBucket() {
+        for (int nanos = 0; nanos < LatencyHistogram.SUB_BUCKETS; nanos++) {
+            assertEquals(nanos, LatencyHistogram.bucket(nanos));
+            assertEquals(nanos, LatencyHistogram.upperBound(nanos));
+        }
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        // Four buckets per power of two 2^e, numbered from 4 * e: 4, 5, 6
+        // and 7 are the buckets 8 to 11, then 8-9, 10-11, 12-13 and 14-15
+        assertEquals(8, LatencyHistogram.bucket(4));
+        assertEquals(11, LatencyHistogram.bucket(7));
+        assertEquals(12, LatencyHistogram.bucket(8));
+        assertEquals(12, LatencyHistogram.bucket(9));
+        assertEquals(13, LatencyHistogram.bucket(10));
+        assertEquals(15, LatencyHistogram.bucket(15));
+        assertEquals(16, LatencyHistogram.bucket(16));
+        assertEquals(16, LatencyHistogram.bucket(19));
+        assertEquals(17, LatencyHistogram.bucket(20));
+        assertEquals(7, LatencyHistogram.upperBound(LatencyHistogram.bucket(7)));
+        assertEquals(9, LatencyHistogram.upperBound(LatencyHistogram.bucket(8)));
+        assertEquals(19, LatencyHistogram.upperBound(LatencyHistogram.bucket(16)));
+        assertEquals(1023, LatencyHistogram.upperBound(LatencyHistogram.bucket(1000)));
+    }
+
+    @Test
+    public void testBucketsAreContiguousAndWithinAQuarter() {
+        for (long nanos = 1; nanos > 0 && nanos < Long.MAX_VALUE / 3; nanos = nanos * 3 + 1) {
+            for (long value = nanos; value < nanos + 3; value++) {
+                final int bucket = LatencyHistogram.bucket(value);
+                final long upper = LatencyHistogram.upperBound(bucket);
+                assertTrue(value + " above its bucket", value <= upper);
+                final int before = LatencyHistogram.bucket(value - 1);
+                assertTrue(value + " in an earlier bucket than " + (value - 1), before <= bucket);
+                if (before != bucket) {
+                    assertEquals(value - 1, LatencyHistogram.upperBound(before));
+                }
+                assertTrue(value + " read as " + upper, upper - value <= value / 4);
+            }
+        }
+    }
+
+    @Test
+    public void testLargestDurationHasABucket() {
+        final int bucket = LatencyHistogram.bucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(bucket));
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(1, histogram.percentile(0.5));
+        assertEquals(Long.MAX_VALUE, histogram.percentile(1.0));
+    }
+
+    @Test
+    public void testPercentilesOfKnownDurations() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1000; nanos >= 1; nanos--) {
+            histogram.record(nanos);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500500, histogram.getTotal());
+        assertEquals(1, histogram.getLast());
+        // The 500th duration is in the bucket 448-511
+        assertEquals(511, histogram.percentile(0.5));
+        // The 990th is in the bucket 896-1023, capped at the largest recorded
+        assertEquals(1000, histogram.percentile(0.99));
+        assertEquals(1, histogram.percentile(0.0));
+        assertEquals(1000, histogram.percentile(1.0));
+    }
+
+    @Test
+    public void testSingleDurationIsEveryPercentile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(300);
+        assertEquals(300, histogram.percentile(0.5));
+        assertEquals(300, histogram.percentile(0.99));
+    }
+
+    @Test
+    public void testEmptyAndNegative() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals("count=0 total=0.000ms mean=0.000ms p50=0.000ms p99=0.000ms max=0.000ms",
+                histogram.summary());
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.percentile(0.99));
+    }
+
+    @Test
+    public void testSummary() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000000);
+        histogram.record(3000000);
+        assertEquals("count=2 total=4.000ms mean=2.000ms p50=1.049ms p99=3.000ms max=3.000ms",
+                histogram.summary());
+    }
+}
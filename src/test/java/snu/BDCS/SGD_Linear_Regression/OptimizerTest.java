@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the update rules of the optimizers against their formulas, the
+ * round trip of their state through a checkpoint and the learning rate
+ * schedules.
+ */
+public class OptimizerTest {
+
+    private static final double RATE = 0.1;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.99;
+    private static final double EPSILON = 1e-8;
+
+    private static final double DELTA = 1e-12;
+
+    /**
+     * The gradients of coordinate 0 at every step
+     */
+    private static final double[] GRADIENTS = {1.0, -0.5, 2.0, 0.25, -3.0, 0.0, 1.5};
+
+    private static final LearningRateSchedule CONSTANT =
+            new LearningRateSchedule(RATE, LearningRateSchedule.CONSTANT, 1.0, 1, 0);
+
+    @Test
+    public void testSGD() {
+        double theta = 0.0;
+        for (double g : GRADIENTS) {
+            theta -= RATE * g;
+        }
+        assertEquals(theta, run(new SGDOptimizer(CONSTANT)), DELTA);
+    }
+
+    @Test
+    public void testMomentum() {
+        for (boolean nesterov : new boolean[]{false, true}) {
+            double theta = 0.0;
+            double v = 0.0;
+            for (double g : GRADIENTS) {
+                v = BETA1 * v + g;
+                theta -= RATE * (nesterov ? g + BETA1 * v : v);
+            }
+            assertEquals(theta, run(new MomentumOptimizer(CONSTANT, BETA1, nesterov)), DELTA);
+        }
+    }
+
+    @Test
+    public void testAdaGrad() {
+        double theta = 0.0;
+        double s = 0.0;
+        for (double g : GRADIENTS) {
+            s += g * g;
+            theta -= RATE * g / (Math.sqrt(s) + EPSILON);
+        }
+        assertEquals(theta, run(new AdaGradOptimizer(CONSTANT, EPSILON)), DELTA);
+    }
+
+    @Test
+    public void testRMSProp() {
+        double theta = 0.0;
+        double s = 0.0;
+        for (double g : GRADIENTS) {
+            s = BETA2 * s + (1 - BETA2) * g * g;
+            theta -= RATE * g / (Math.sqrt(s) + EPSILON);
+        }
+        assertEquals(theta, run(new RMSPropOptimizer(CONSTANT, BETA2, EPSILON)), DELTA);
+    }
+
+    /**
+     * The bias corrections are folded into the rate, which puts epsilon on
+     * the uncorrected root as in section 2 of Kingma and Ba
+     */
+    @Test
+    public void testAdam() {
+        double theta = 0.0;
+        double m = 0.0;
+        double v = 0.0;
+        for (int t = 1; t <= GRADIENTS.length; t++) {
+            final double g = GRADIENTS[t - 1];
+            m = BETA1 * m + (1 - BETA1) * g;
+            v = BETA2 * v + (1 - BETA2) * g * g;
+            final double rate = RATE * Math.sqrt(1 - Math.pow(BETA2, t)) / (1 - Math.pow(BETA1, t));
+            theta -= rate * m / (Math.sqrt(v) + EPSILON);
+        }
+        assertEquals(theta, run(new AdamOptimizer(CONSTANT, BETA1, BETA2, EPSILON)), DELTA);
+    }
+
+    @Test
+    public void testStateRoundTrip() throws IOException {
+        for (Optimizer optimizer : optimizers()) {
+            final Optimizer.Rule rule = optimizer.newRule(2);
+            final double[] theta = new double[2];
+            for (int step = 0; step < 4; step++) {
+                step(rule, theta, GRADIENTS[step]);
+            }
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            rule.write(new DataOutputStream(bytes));
+            final Optimizer.Rule restored = optimizer.newRule(2);
+            restored.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+            final double[] restoredTheta = theta.clone();
+            for (int step = 4; step < GRADIENTS.length; step++) {
+                step(rule, theta, GRADIENTS[step]);
+                step(restored, restoredTheta, GRADIENTS[step]);
+            }
+            assertArrayEquals(theta, restoredTheta, DELTA);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadRejectsOtherDimension() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new AdaGradOptimizer(CONSTANT, EPSILON).newRule(3).write(new DataOutputStream(bytes));
+        new AdaGradOptimizer(CONSTANT, EPSILON).newRule(2)
+                .read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void testSchedules() {
+        final LearningRateSchedule step = new LearningRateSchedule(1.0, LearningRateSchedule.STEP, 0.5, 10, 0);
+        assertEquals(1.0, step.rate(9), DELTA);
+        assertEquals(0.5, step.rate(10), DELTA);
+        assertEquals(0.25, step.rate(25), DELTA);
+
+        final LearningRateSchedule inverse = new LearningRateSchedule(1.0, LearningRateSchedule.INVERSE, 0.5, 10, 0);
+        assertEquals(1.0, inverse.rate(0), DELTA);
+        assertEquals(1.0 / 1.5, inverse.rate(10), DELTA);
+        assertEquals(1.0 / 2.0, inverse.rate(20), DELTA);
+
+        final LearningRateSchedule warmup = new LearningRateSchedule(1.0, LearningRateSchedule.CONSTANT, 1.0, 1, 4);
+        assertEquals(0.25, warmup.rate(0), DELTA);
+        assertEquals(0.75, warmup.rate(2), DELTA);
+        assertEquals(1.0, warmup.rate(4), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSchedule() {
+        new LearningRateSchedule(1.0, "cosine", 1.0, 1, 0);
+    }
+
+    /**
+     * @return coordinate 0 of theta after a step with every gradient
+     */
+    private static double run(Optimizer optimizer) {
+        final Optimizer.Rule rule = optimizer.newRule(1);
+        final double[] theta = new double[1];
+        for (double g : GRADIENTS) {
+            rule.nextStep();
+            rule.apply(theta, 0, g);
+        }
+        return theta[0];
+    }
+
+    /**
+     * One step applying the gradient to coordinate 0 and its negative half
+     * to coordinate 1
+     */
+    private static void step(Optimizer.Rule rule, double[] theta, double gradient) {
+        rule.nextStep();
+        rule.apply(theta, 0, gradient);
+        rule.apply(theta, 1, -0.5 * gradient);
+    }
+
+    static Optimizer[] optimizers() {
+        return new Optimizer[]{
+                new SGDOptimizer(CONSTANT),
+                new MomentumOptimizer(CONSTANT, BETA1, true),
+                new AdaGradOptimizer(CONSTANT, EPSILON),
+                new RMSPropOptimizer(CONSTANT, BETA2, EPSILON),
+                new AdamOptimizer(CONSTANT, BETA1, BETA2, EPSILON)
+        };
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link ParallelSGDUpdater} against {@link SGDUpdater}s run one
+ * after the other over the row ranges of its threads.
+ */
+public class ParallelSGDUpdaterTest {
+
+    private static final double DELTA = 1e-12;
+
+    private static final LearningRateSchedule SCHEDULE =
+            new LearningRateSchedule(0.05, LearningRateSchedule.CONSTANT, 1.0, 1, 0);
+
+    private final double[][] rows = SGDUpdaterTest.randomRows(new Random(1), 31, 4);
+    private final double[] labels = SGDUpdaterTest.randomLabels(new Random(2), rows.length);
+    private final DensePartitionStore partition = SGDUpdaterTest.dense(rows, labels);
+
+    @Test
+    public void testOneThreadMatchesSGDUpdater() throws Exception {
+        for (String mode : new String[]{ParallelSGDUpdater.HOGWILD, ParallelSGDUpdater.REPLICA}) {
+            final Optimizer optimizer = new AdaGradOptimizer(SCHEDULE, 1e-8);
+            final ParallelSGDUpdater parallel = new ParallelSGDUpdater(4, true, optimizer, 4, 1, mode, tracer());
+            final SGDUpdater single = new SGDUpdater(4, true, optimizer.newRule(5), 4, tracer());
+            for (int epoch = 0; epoch < 3; epoch++) {
+                parallel.epoch(partition);
+                single.epoch(partition);
+            }
+            assertArrayEquals(single.getTheta(), parallel.getTheta(), 0.0);
+            assertEquals(single.takeSquaredError() / rows.length, parallel.takeMeanSquaredError(rows.length), 0.0);
+            parallel.close();
+        }
+    }
+
+    /**
+     * Every thread trains a copy of theta over its third of the rows, with
+     * optimizer state of its own, and the copies are averaged by their rows
+     */
+    @Test
+    public void testReplicaMergeWeightsByRows() throws Exception {
+        final Optimizer optimizer = new AdaGradOptimizer(SCHEDULE, 1e-8);
+        final ParallelSGDUpdater parallel = new ParallelSGDUpdater(4, true, optimizer, 1, 3,
+                ParallelSGDUpdater.REPLICA, tracer());
+        try {
+            // 31 rows over 3 threads
+            final int[] bounds = {0, 10, 20, 31};
+            final SGDUpdater[] replicas = new SGDUpdater[3];
+            for (int t = 0; t < 3; t++) {
+                replicas[t] = new SGDUpdater(4, true, optimizer.newRule(5), 1, tracer());
+            }
+            final double[] expected = new double[5];
+            for (int epoch = 0; epoch < 3; epoch++) {
+                parallel.epoch(partition);
+
+                final double[] merged = new double[5];
+                for (int t = 0; t < 3; t++) {
+                    System.arraycopy(expected, 0, replicas[t].getTheta(), 0, 5);
+                    replicas[t].epoch(partition, bounds[t], bounds[t + 1]);
+                    final double weight = (bounds[t + 1] - bounds[t]) / (double) rows.length;
+                    for (int i = 0; i < 5; i++) {
+                        merged[i] += weight * replicas[t].getTheta()[i];
+                    }
+                }
+                System.arraycopy(merged, 0, expected, 0, 5);
+                assertArrayEquals("epoch " + epoch, expected, parallel.getTheta(), DELTA);
+            }
+        } finally {
+            parallel.close();
+        }
+    }
+
+    /**
+     * Rows whose non-zeros fall in the block of coordinates of their thread
+     * make the hogwild updates disjoint, and so deterministic
+     */
+    @Test
+    public void testHogwildWithDisjointRows() throws Exception {
+        final Random random = new Random(3);
+        final SparsePartitionStore.Builder builder = new SparsePartitionStore.Builder(6);
+        final double[][] dense = new double[30][6];
+        for (int row = 0; row < 30; row++) {
+            // Rows [0, 10) use coordinates 0 and 1, [10, 20) 2 and 3, [20, 30) 4 and 5
+            final int first = 2 * (row / 10);
+            dense[row][first] = random.nextGaussian();
+            dense[row][first + 1] = random.nextGaussian();
+            builder.addRow(new int[]{first, first + 1}, new double[]{dense[row][first], dense[row][first + 1]},
+                    2, random.nextGaussian());
+        }
+        final SparsePartitionStore sparse = builder.build();
+        final Optimizer optimizer = new SGDOptimizer(SCHEDULE);
+        final ParallelSGDUpdater parallel = new ParallelSGDUpdater(6, false, optimizer, 1, 3,
+                ParallelSGDUpdater.HOGWILD, tracer());
+        final SGDUpdater single = new SGDUpdater(6, false, optimizer.newRule(6), 1, tracer());
+        try {
+            for (int epoch = 0; epoch < 3; epoch++) {
+                parallel.epoch(sparse);
+                single.epoch(sparse);
+            }
+        } finally {
+            parallel.close();
+        }
+        assertArrayEquals(single.getTheta(), parallel.getTheta(), DELTA);
+    }
+
+    @Test
+    public void testStateRoundTrip() throws Exception {
+        final Optimizer optimizer = new AdaGradOptimizer(SCHEDULE, 1e-8);
+        final ParallelSGDUpdater original = new ParallelSGDUpdater(4, true, optimizer, 1, 3,
+                ParallelSGDUpdater.REPLICA, tracer());
+        final ParallelSGDUpdater restored = new ParallelSGDUpdater(4, true, optimizer, 1, 3,
+                ParallelSGDUpdater.REPLICA, tracer());
+        try {
+            original.epoch(partition);
+            original.epoch(partition);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            original.writeState(new DataOutputStream(bytes));
+            restored.setTheta(original.getTheta());
+            restored.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+            original.epoch(partition);
+            restored.epoch(partition);
+            assertArrayEquals(original.getTheta(), restored.getTheta(), 0.0);
+        } finally {
+            original.close();
+            restored.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadStateRejectsOtherThreadCount() throws Exception {
+        final Optimizer optimizer = new AdaGradOptimizer(SCHEDULE, 1e-8);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new ParallelSGDUpdater(4, true, optimizer, 1, 1, ParallelSGDUpdater.REPLICA, tracer())
+                .writeState(new DataOutputStream(bytes));
+        new ParallelSGDUpdater(4, true, optimizer, 1, 2, ParallelSGDUpdater.REPLICA, tracer())
+                .readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testCloseStopsThePool() throws Exception {
+        final ParallelSGDUpdater parallel = new ParallelSGDUpdater(4, true, new SGDOptimizer(SCHEDULE), 1, 2,
+                ParallelSGDUpdater.HOGWILD, tracer());
+        parallel.epoch(partition);
+        parallel.close();
+        parallel.epoch(partition);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownMode() {
+        new ParallelSGDUpdater(4, true, new SGDOptimizer(SCHEDULE), 1, 2, "locked", tracer());
+    }
+
+    private static TaskTracer tracer() {
+        return new TaskTracer("test", "OFF", 1.0);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the {@link ParameterServer} and its {@link ParameterClient}s over
+ * loopback connections.
+ */
+public class ParameterServerTest {
+
+    /**
+     * How long a call that should return is waited for
+     */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * How long a call that should block is watched
+     */
+    private static final long BLOCKED_MILLIS = 300;
+
+    private static final double DELTA = 1e-12;
+
+    private final TaskMetrics metrics = new TaskMetrics("test");
+
+    private final ExecutorService background = Executors.newCachedThreadPool();
+
+    private ParameterServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        background.shutdownNow();
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testStalenessZeroWaitsForTheSlowest() throws Exception {
+        final ParameterClient[] clients = start(0, new double[2], 1, 1);
+        final double[] theta = new double[2];
+        assertTrue(clients[0].pull(theta));
+        assertTrue(clients[1].pull(theta));
+        clients[0].push(new double[2], 1.0);
+
+        // One epoch ahead of the slowest is too many
+        final Future<Boolean> ahead = pullLater(clients[0], 2);
+        assertBlocked(ahead);
+        clients[1].push(new double[2], 1.0);
+        assertTrue(ahead.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStalenessBoundsTheLead() throws Exception {
+        final ParameterClient[] clients = start(2, new double[2], 1, 1);
+        final double[] theta = new double[2];
+        // The fast client runs two epochs ahead, and then waits
+        for (int epoch = 0; epoch < 2; epoch++) {
+            assertTrue(clients[0].pull(theta));
+            clients[0].push(new double[2], 1.0);
+        }
+        assertTrue(clients[0].pull(theta));
+        clients[0].push(new double[2], 1.0);
+        final Future<Boolean> ahead = pullLater(clients[0], 2);
+        assertBlocked(ahead);
+
+        assertTrue(clients[1].pull(theta));
+        clients[1].push(new double[2], 1.0);
+        assertTrue(ahead.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDeltasAreAppliedOnceByWeight() throws Exception {
+        final ParameterClient[] clients = start(1, new double[]{1.0, 1.0}, 1, 3);
+        final double[] theta = new double[2];
+        assertTrue(clients[0].pull(theta));
+        assertTrue(clients[1].pull(theta));
+        clients[0].push(new double[]{4.0, 0.0}, 2.0);
+        clients[1].push(new double[]{0.0, 8.0}, 6.0);
+
+        final Vector message = server.awaitClock(1);
+        assertArrayEquals(new double[]{1.0 + 4.0 / 4, 1.0 + 8.0 * 3 / 4},
+                VectorCodecTest.toArray(ModelMessage.theta(message)), DELTA);
+        assertEquals((2.0 + 3 * 6.0) / 4, ModelMessage.loss(message), DELTA);
+        assertEquals(4, ModelMessage.weight(message), 0.0);
+
+        assertTrue(clients[0].pull(theta));
+        assertArrayEquals(new double[]{2.0, 7.0}, theta, DELTA);
+    }
+
+    @Test
+    public void testAwaitClockWaitsForEveryClient() throws Exception {
+        final ParameterClient[] clients = start(1, new double[1], 1, 1);
+        final double[] theta = new double[1];
+        assertTrue(clients[0].pull(theta));
+        clients[0].push(new double[]{1.0}, 1.0);
+        final Future<Vector> clock = background.submit(new Callable<Vector>() {
+            @Override
+            public Vector call() throws Exception {
+                return server.awaitClock(1);
+            }
+        });
+        assertBlocked(clock);
+        assertTrue(clients[1].pull(theta));
+        clients[1].push(new double[]{1.0}, 1.0);
+        // Each one moved theta by its half of the delta
+        assertEquals(1.0, ModelMessage.theta(clock.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)).get(0), DELTA);
+    }
+
+    @Test
+    public void testFinishReleasesWaitingClients() throws Exception {
+        final ParameterClient[] clients = start(0, new double[1], 1, 1);
+        final double[] theta = new double[1];
+        assertTrue(clients[0].pull(theta));
+        clients[0].push(new double[1], 1.0);
+        final Future<Boolean> waiting = pullLater(clients[0], 1);
+        assertBlocked(waiting);
+
+        final Future<Void> finished = background.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                server.finish(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+                return null;
+            }
+        });
+        assertFalse(waiting.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(clients[1].pull(theta));
+        // Training is over once every client hung up
+        clients[0].close();
+        clients[1].close();
+        finished.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testConnectGivesUp() throws Exception {
+        final int port = freePort();
+        final long start = System.currentTimeMillis();
+        try {
+            new ParameterClient("localhost:" + port, 1, null, metrics, 300);
+            throw new AssertionError("Connected to a port nobody listens on");
+        } catch (ConnectException e) {
+            assertTrue(System.currentTimeMillis() - start >= 300);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testBindFailureFails() throws Exception {
+        final ServerSocket taken = new ServerSocket(0);
+        try {
+            new ParameterServer(taken.getLocalPort(), 1, 0, new double[1], 0, null, metrics).close();
+        } finally {
+            taken.close();
+        }
+    }
+
+    /**
+     * Starts a server of the given staleness and theta, and connects a
+     * client of every given weight
+     */
+    private ParameterClient[] start(int staleness, double[] theta, double... weights) throws Exception {
+        final int port = freePort();
+        server = new ParameterServer(port, weights.length, staleness, theta, 0, null, metrics);
+        final ParameterClient[] clients = new ParameterClient[weights.length];
+        for (int w = 0; w < weights.length; w++) {
+            clients[w] = new ParameterClient("localhost:" + port, weights[w], null, metrics,
+                    TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        }
+        return clients;
+    }
+
+    /**
+     * @return the result of a pull of a model of the given size on another thread
+     */
+    private Future<Boolean> pullLater(final ParameterClient client, final int modelSize) {
+        return background.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return client.pull(new double[modelSize]);
+            }
+        });
+    }
+
+    private static void assertBlocked(Future<?> future) throws InterruptedException {
+        Thread.sleep(BLOCKED_MILLIS);
+        assertFalse(future.isDone());
+    }
+
+    /**
+     * @return a port that was free a moment ago
+     */
+    static int freePort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
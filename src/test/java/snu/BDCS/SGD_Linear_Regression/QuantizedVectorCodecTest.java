@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the precision of the {@link QuantizedVectorCodec} modes, that only
+ * the theta values of models are quantized and the error feedback of updates.
+ */
+public class QuantizedVectorCodecTest {
+
+    /**
+     * Three features and a bias
+     */
+    private static final int DIMENSION = 3;
+
+    private static final double[] THETA = {0.5, -1.25, 3.0, 0.125};
+
+    @Test
+    public void testFloat32RoundsModelsToFloats() {
+        final QuantizedVectorCodec codec = codec(QuantizedVectorCodec.FLOAT32, false);
+        final Vector decoded = codec.decode(codec.encode(ModelMessage.of(new double[]{0.1, 1e-3, -7.7, 2.0}, 0.3, 42)));
+        assertTrue(ModelMessage.isModel(decoded));
+        assertEquals(6, decoded.size());
+        assertEquals((float) 0.1, decoded.get(0), 0.0);
+        assertEquals((float) 1e-3, decoded.get(1), 0.0);
+        assertEquals((float) -7.7, decoded.get(2), 0.0);
+        assertEquals(2.0, decoded.get(3), 0.0);
+        // The loss and the weight are exact
+        assertEquals(0.3, ModelMessage.loss(decoded), 0.0);
+        assertEquals(42, ModelMessage.weight(decoded), 0.0);
+    }
+
+    @Test
+    public void testIntegerModesStayWithinOneStep() {
+        for (String precision : new String[]{QuantizedVectorCodec.INT16, QuantizedVectorCodec.INT8}) {
+            final double step = 3.0 / (QuantizedVectorCodec.INT16.equals(precision) ? Short.MAX_VALUE : Byte.MAX_VALUE);
+            final QuantizedVectorCodec codec = codec(precision, false);
+            final Vector decoded = codec.decode(codec.encode(ModelMessage.of(THETA, 0.7, 5)));
+            assertTrue(ModelMessage.isModel(decoded));
+            for (int i = 0; i < THETA.length; i++) {
+                assertEquals(THETA[i], decoded.get(i), step);
+            }
+            // The largest magnitude is a level, so it is exact
+            assertEquals(3.0, decoded.get(2), 1e-12);
+            assertEquals(0.7, ModelMessage.loss(decoded), 0.0);
+            assertEquals(5, ModelMessage.weight(decoded), 0.0);
+        }
+    }
+
+    @Test
+    public void testStochasticRoundingIsUnbiased() {
+        final QuantizedVectorCodec codec = codec(QuantizedVectorCodec.INT8, false);
+        final double[] sum = new double[THETA.length];
+        final int rounds = 20000;
+        for (int round = 0; round < rounds; round++) {
+            final double[] decoded = new double[THETA.length];
+            QuantizedVectorCodec.decodeInto(codec.encode(THETA), decoded);
+            for (int i = 0; i < THETA.length; i++) {
+                sum[i] += decoded[i];
+            }
+        }
+        for (int i = 0; i < THETA.length; i++) {
+            // The rounding error of one value is below 3 / 127 and has a mean of 0
+            assertEquals(THETA[i], sum[i] / rounds, 1e-3);
+        }
+    }
+
+    @Test
+    public void testOtherVectorsAreSentExactly() {
+        final QuantizedVectorCodec codec = codec(QuantizedVectorCodec.INT8, false);
+        final double[] values = {0.1, 1e-300, -5.5, 7.0, 2.0 / 3.0, 1e10};
+        final Vector decoded = codec.decode(codec.encode(VectorCodecTest.vector(values)));
+        assertFalse(ModelMessage.isModel(decoded));
+        assertArrayEquals(values, VectorCodecTest.toArray(decoded), 0.0);
+    }
+
+    @Test
+    public void testErrorFeedbackKeepsTheSumOfUpdates() {
+        final QuantizedVectorCodec codec = codec(QuantizedVectorCodec.INT8, true);
+        final Random random = new Random(11);
+        final double[] update = new double[THETA.length];
+        final double[] decoded = new double[THETA.length];
+        final double[] sum = new double[THETA.length];
+        final double[] decodedSum = new double[THETA.length];
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < update.length; i++) {
+                // One large coordinate makes the step too coarse for the others
+                update[i] = i == 0 ? 1.0 : 1e-3 * random.nextDouble();
+                sum[i] += update[i];
+            }
+            QuantizedVectorCodec.decodeInto(codec.encodeUpdate(update), decoded);
+            for (int i = 0; i < update.length; i++) {
+                decodedSum[i] += decoded[i];
+            }
+        }
+        // What is left out of the decoded sum is the residual of the last update
+        for (int i = 0; i < update.length; i++) {
+            assertEquals(sum[i], decodedSum[i], 2.0 / Byte.MAX_VALUE);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeIntoRejectsOtherSize() {
+        QuantizedVectorCodec.decodeInto(codec(QuantizedVectorCodec.INT16, false).encode(THETA), new double[2]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPrecision() {
+        QuantizedVectorCodec.parseMode("float64");
+    }
+
+    private static QuantizedVectorCodec codec(String precision, boolean errorFeedback) {
+        return new QuantizedVectorCodec(precision, errorFeedback, DIMENSION, true, new TaskMetrics("test"));
+    }
+}
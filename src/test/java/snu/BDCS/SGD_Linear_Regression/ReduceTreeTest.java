@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the shape of the {@link ReduceTree} the driver lays the Reduces
+ * out along.
+ */
+public class ReduceTreeTest {
+
+    @Test
+    public void testEveryTaskHasOneParent() {
+        for (int fanIn = 2; fanIn <= 5; fanIn++) {
+            for (int size = 1; size <= 40; size++) {
+                final ReduceTree tree = new ReduceTree(fanIn, size);
+                final int[] parents = new int[size + 1];
+                int innerNodes = 0;
+                for (int parent = 0; parent <= size; parent++) {
+                    if (!tree.isInnerNode(parent)) {
+                        continue;
+                    }
+                    // The inner nodes are 0 to innerNodes - 1, without gaps
+                    assertEquals(innerNodes++, parent);
+                    final int first = tree.firstChild(parent);
+                    final int last = tree.lastChild(parent);
+                    assertTrue(first <= last);
+                    assertTrue(last - first + 1 <= fanIn);
+                    for (int child = first; child <= last; child++) {
+                        ++parents[child];
+                        assertEquals(parent, tree.parent(child));
+                    }
+                }
+                assertEquals(0, parents[0]);
+                for (int node = 1; node <= size; node++) {
+                    assertEquals("fan-in " + fanIn + ", size " + size + ", node " + node, 1, parents[node]);
+                }
+                // Only the last inner node may have fewer than fan-in children
+                for (int parent = 0; parent < innerNodes - 1; parent++) {
+                    assertEquals(fanIn, tree.lastChild(parent) - tree.firstChild(parent) + 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPartialGroup() {
+        final ReduceTree tree = new ReduceTree(2, 7);
+        assertEquals(1, tree.firstChild(0));
+        assertEquals(2, tree.lastChild(0));
+        assertEquals(5, tree.firstChild(2));
+        assertEquals(6, tree.lastChild(2));
+        // Node 3 only has node 7, its second child would be node 8
+        assertTrue(tree.isInnerNode(3));
+        assertEquals(7, tree.firstChild(3));
+        assertEquals(7, tree.lastChild(3));
+        assertFalse(tree.isInnerNode(4));
+        assertEquals(3, tree.parent(7));
+    }
+
+    @Test
+    public void testRebuildAfterFailure() {
+        // Two of seven ComputeTasks failed and the group was rebuilt from the rest
+        final ReduceTree tree = new ReduceTree(2, 5);
+        assertTrue(tree.isInnerNode(2));
+        assertEquals(5, tree.firstChild(2));
+        assertEquals(5, tree.lastChild(2));
+        assertFalse(tree.isInnerNode(3));
+        assertEquals(2, tree.parent(5));
+    }
+
+    @Test
+    public void testSingleTask() {
+        final ReduceTree tree = new ReduceTree(3, 1);
+        assertTrue(tree.isInnerNode(0));
+        assertEquals(1, tree.firstChild(0));
+        assertEquals(1, tree.lastChild(0));
+        assertFalse(tree.isInnerNode(1));
+        assertEquals(0, tree.parent(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFanInOfOne() {
+        new ReduceTree(1, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLeafHasNoChildren() {
+        new ReduceTree(2, 3).firstChild(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testControllerHasNoParent() {
+        new ReduceTree(2, 3).parent(0);
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the epochs of {@link SGDUpdater} against a naive implementation of
+ * plain SGD on the least squares loss.
+ */
+public class SGDUpdaterTest {
+
+    private static final double RATE = 0.01;
+
+    private static final double DELTA = 1e-12;
+
+    @Test
+    public void testStochasticEpochMatchesReference() {
+        final double[][] rows = randomRows(new Random(1), 37, 5);
+        final double[] labels = randomLabels(new Random(2), rows.length);
+        for (boolean intercept : new boolean[]{false, true}) {
+            final SGDUpdater updater = newUpdater(5, intercept, 1);
+            updater.epoch(dense(rows, labels));
+            updater.epoch(dense(rows, labels));
+
+            final double[] expected = new double[ModelMessage.modelSize(5, intercept)];
+            reference(expected, intercept, rows, labels, 1);
+            reference(expected, intercept, rows, labels, 1);
+            assertArrayEquals(expected, updater.getTheta(), DELTA);
+        }
+    }
+
+    /**
+     * Batches of 4 rows and more go through the blocked products, the rows
+     * left over in a batch and shorter batches through the row kernel
+     */
+    @Test
+    public void testBlockedMiniBatchMatchesReference() {
+        final double[][] rows = randomRows(new Random(8), 43, 7);
+        final double[] labels = randomLabels(new Random(9), rows.length);
+        for (int batchSize : new int[]{2, 4, 5, 8, 16, 64}) {
+            for (boolean intercept : new boolean[]{false, true}) {
+                final SGDUpdater updater = newUpdater(7, intercept, batchSize);
+                updater.epoch(dense(rows, labels));
+                updater.epoch(dense(rows, labels));
+
+                final double[] expected = new double[ModelMessage.modelSize(7, intercept)];
+                reference(expected, intercept, rows, labels, batchSize);
+                reference(expected, intercept, rows, labels, batchSize);
+                assertArrayEquals("batch size " + batchSize, expected, updater.getTheta(), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testMiniBatchSquaredErrorMatchesReference() {
+        final double[][] rows = randomRows(new Random(10), 11, 3);
+        final double[] labels = randomLabels(new Random(11), rows.length);
+        final SGDUpdater updater = newUpdater(3, true, 8);
+        updater.epoch(dense(rows, labels));
+        // The first batch is evaluated at theta = 0, the second after its update
+        final double[] theta = new double[4];
+        double expected = 0.0;
+        for (int row = 0; row < rows.length; row++) {
+            if (row == 8) {
+                reference(theta, true, Arrays.copyOf(rows, 8), Arrays.copyOf(labels, 8), 8);
+            }
+            double error = theta[3] - labels[row];
+            for (int i = 0; i < 3; i++) {
+                error += theta[i] * rows[row][i];
+            }
+            expected += error * error;
+        }
+        assertEquals(expected, updater.takeSquaredError(), DELTA);
+    }
+
+    @Test
+    public void testEpochOverRangeOnlyReadsThoseRows() {
+        final double[][] rows = randomRows(new Random(3), 20, 4);
+        final double[] labels = randomLabels(new Random(4), rows.length);
+        final SGDUpdater updater = newUpdater(4, false, 1);
+        updater.epoch(dense(rows, labels), 5, 12);
+
+        final double[] expected = new double[4];
+        reference(expected, false, slice(rows, 5, 12), slice(labels, 5, 12), 1);
+        assertArrayEquals(expected, updater.getTheta(), DELTA);
+    }
+
+    @Test
+    public void testSquaredErrorIsTakenBeforeEveryUpdate() {
+        final double[][] rows = {{1, 0}, {0, 1}};
+        final double[] labels = {2, -1};
+        final SGDUpdater updater = newUpdater(2, false, 1);
+        updater.epoch(dense(rows, labels));
+        // theta is 0 for both rows, whose coordinates do not overlap
+        assertEquals(4.0 + 1.0, updater.takeSquaredError(), DELTA);
+        assertEquals(0.0, updater.takeSquaredError(), 0.0);
+    }
+
+    @Test
+    public void testSparseEpochsMatchDense() {
+        final double[][] rows = sparsify(randomRows(new Random(5), 29, 8), new Random(6));
+        final double[] labels = randomLabels(new Random(7), rows.length);
+        for (Optimizer optimizer : OptimizerTest.optimizers()) {
+            if (!optimizer.supportsSparse()) {
+                continue;
+            }
+            for (int batchSize : new int[]{1, 4}) {
+                for (boolean intercept : new boolean[]{false, true}) {
+                    final SGDUpdater dense = newUpdater(optimizer, 8, intercept, batchSize);
+                    final SGDUpdater sparse = newUpdater(optimizer, 8, intercept, batchSize);
+                    for (int epoch = 0; epoch < 3; epoch++) {
+                        dense.epoch(dense(rows, labels));
+                        sparse.epoch(sparse(rows, labels));
+                    }
+                    final String name = optimizer.getClass().getSimpleName() + ", batch size " + batchSize;
+                    assertArrayEquals(name, dense.getTheta(), sparse.getTheta(), DELTA);
+                    assertEquals(name, dense.takeSquaredError(), sparse.takeSquaredError(), DELTA);
+                }
+            }
+        }
+    }
+
+    /**
+     * The optimizers that keep moving theta along zero gradients would train
+     * another model on sparse rows
+     */
+    @Test
+    public void testSparseSupport() {
+        for (Optimizer optimizer : OptimizerTest.optimizers()) {
+            final boolean moves = optimizer instanceof MomentumOptimizer || optimizer instanceof AdamOptimizer;
+            assertEquals(optimizer.getClass().getSimpleName(), !moves, optimizer.supportsSparse());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSizeMustBePositive() {
+        newUpdater(2, false, 0);
+    }
+
+    static SGDUpdater newUpdater(int dimension, boolean intercept, int batchSize) {
+        return newUpdater(new SGDOptimizer(new LearningRateSchedule(RATE, LearningRateSchedule.CONSTANT, 1.0, 1, 0)),
+                dimension, intercept, batchSize);
+    }
+
+    static SGDUpdater newUpdater(Optimizer optimizer, int dimension, boolean intercept, int batchSize) {
+        return new SGDUpdater(dimension, intercept, optimizer.newRule(ModelMessage.modelSize(dimension, intercept)),
+                batchSize, new TaskTracer("test", "OFF", 1.0));
+    }
+
+    static DensePartitionStore dense(double[][] rows, double[] labels) {
+        final DensePartitionStore.Builder builder = new DensePartitionStore.Builder(rows[0].length);
+        for (int row = 0; row < rows.length; row++) {
+            builder.addRow(rows[row], labels[row]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The same rows in compressed form, only their non-zeros stored
+     */
+    static SparsePartitionStore sparse(double[][] rows, double[] labels) {
+        final int dimension = rows[0].length;
+        final SparsePartitionStore.Builder builder = new SparsePartitionStore.Builder(dimension);
+        final int[] indices = new int[dimension];
+        final double[] values = new double[dimension];
+        for (int row = 0; row < rows.length; row++) {
+            int length = 0;
+            for (int i = 0; i < dimension; i++) {
+                if (rows[row][i] != 0.0) {
+                    indices[length] = i;
+                    values[length] = rows[row][i];
+                    ++length;
+                }
+            }
+            builder.addRow(indices, values, length, labels[row]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Zeroes about three quarters of the values, in place
+     */
+    static double[][] sparsify(double[][] rows, Random random) {
+        for (double[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (random.nextInt(4) != 0) {
+                    row[i] = 0.0;
+                }
+            }
+        }
+        return rows;
+    }
+
+    static double[][] randomRows(Random random, int numRows, int dimension) {
+        final double[][] rows = new double[numRows][dimension];
+        for (double[] row : rows) {
+            for (int i = 0; i < dimension; i++) {
+                row[i] = random.nextGaussian();
+            }
+        }
+        return rows;
+    }
+
+    static double[] randomLabels(Random random, int numRows) {
+        final double[] labels = new double[numRows];
+        for (int row = 0; row < numRows; row++) {
+            labels[row] = 3 * random.nextGaussian();
+        }
+        return labels;
+    }
+
+    /**
+     * One epoch of SGD in batches of the given size, every batch averaging
+     * the gradients of its rows against the same theta
+     */
+    static void reference(double[] theta, boolean intercept, double[][] rows, double[] labels, int batchSize) {
+        final int dimension = rows[0].length;
+        for (int start = 0; start < rows.length; start += batchSize) {
+            final int end = Math.min(rows.length, start + batchSize);
+            final double[] gradient = new double[theta.length];
+            for (int row = start; row < end; row++) {
+                double prediction = intercept ? theta[dimension] : 0.0;
+                for (int i = 0; i < dimension; i++) {
+                    prediction += theta[i] * rows[row][i];
+                }
+                final double error = prediction - labels[row];
+                for (int i = 0; i < dimension; i++) {
+                    gradient[i] += error * rows[row][i];
+                }
+                if (intercept) {
+                    gradient[dimension] += error;
+                }
+            }
+            for (int i = 0; i < theta.length; i++) {
+                theta[i] -= RATE * gradient[i] / (end - start);
+            }
+        }
+    }
+
+    private static double[][] slice(double[][] rows, int from, int to) {
+        final double[][] result = new double[to - from][];
+        System.arraycopy(rows, from, result, 0, to - from);
+        return result;
+    }
+
+    private static double[] slice(double[] labels, int from, int to) {
+        final double[] result = new double[to - from];
+        System.arraycopy(labels, from, result, 0, to - from);
+        return result;
+    }
+}
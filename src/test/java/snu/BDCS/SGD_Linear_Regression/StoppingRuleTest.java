@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks when {@link StoppingRule} stops training and whether it reports
+ * convergence.
+ */
+public class StoppingRuleTest {
+
+    /**
+     * Larger than the tolerance of theta, so that only the RMSE can stop training
+     */
+    private static final double CHANGE = 1.0;
+
+    @Test
+    public void testRunsToMaxEpochsByDefault() {
+        final StoppingRule rule = new StoppingRule(10, 1e-6, 0.01);
+        for (double rmse : new double[]{4.0, 2.0, 1.0, 0.5}) {
+            assertFalse(rule.update(CHANGE, rmse));
+        }
+        assertFalse(rule.isConverged());
+        assertEquals("reached the maximum of 10 epochs", rule.getReason());
+    }
+
+    @Test
+    public void testThetaConverged() {
+        final StoppingRule rule = new StoppingRule(10, 1e-6, 0);
+        assertFalse(rule.update(CHANGE, 1.0));
+        assertTrue(rule.update(1e-7, 1.0));
+        assertTrue(rule.isConverged());
+    }
+
+    @Test
+    public void testLossConverged() {
+        final StoppingRule rule = new StoppingRule(10, 1e-6, 0.01);
+        assertFalse(rule.update(CHANGE, 1.0));
+        assertFalse(rule.update(CHANGE, 0.9));
+        assertTrue(rule.update(CHANGE, 0.895));
+        assertTrue(rule.isConverged());
+    }
+
+    @Test
+    public void testRisingLossDoesNotConverge() {
+        final StoppingRule rule = new StoppingRule(100, 1e-6, 0.01);
+        double rmse = 1.0;
+        for (int epoch = 0; epoch < StoppingRule.DIVERGENCE_PATIENCE; epoch++) {
+            assertFalse(rule.update(CHANGE, rmse));
+            rmse *= 1.4;
+        }
+        assertFalse(rule.isConverged());
+    }
+
+    @Test
+    public void testNoisyLossKeepsTraining() {
+        final StoppingRule rule = new StoppingRule(100, 1e-6, 0.01);
+        double rmse = 10.0;
+        for (int epoch = 0; epoch < 40; epoch++) {
+            // Falls by a fifth, then rises by a tenth, over and over
+            rmse *= epoch % 2 == 0 ? 0.8 : 1.1;
+            assertFalse(rule.update(CHANGE, rmse));
+        }
+        assertFalse(rule.isConverged());
+    }
+
+    @Test
+    public void testSustainedRiseStopsAsDiverged() {
+        final StoppingRule rule = new StoppingRule(100, 1e-6, 0.01);
+        assertFalse(rule.update(CHANGE, 1.0));
+        for (int rise = 1; rise < StoppingRule.DIVERGENCE_PATIENCE; rise++) {
+            assertFalse(rule.update(CHANGE, 1.0 + rise));
+        }
+        assertTrue(rule.update(CHANGE, 100.0));
+        assertFalse(rule.isConverged());
+        assertTrue(rule.getReason(), rule.getReason().startsWith("RMSE rose"));
+    }
+
+    @Test
+    public void testNonFiniteLossStopsAsDiverged() {
+        final StoppingRule rule = new StoppingRule(100, 1e-6, 0.01);
+        assertFalse(rule.update(CHANGE, 1.0));
+        assertTrue(rule.update(CHANGE, Double.NaN));
+        assertFalse(rule.isConverged());
+    }
+
+    @Test
+    public void testZeroLossConverges() {
+        final StoppingRule rule = new StoppingRule(100, 1e-6, 0.01);
+        assertFalse(rule.update(CHANGE, 0.0));
+        assertTrue(rule.update(CHANGE, 0.0));
+        assertTrue(rule.isConverged());
+    }
+
+    @Test
+    public void testResumeComparesWithCheckpointedLoss() {
+        final StoppingRule rule = new StoppingRule(100, 1e-6, 0.01);
+        rule.resume(1.0);
+        assertTrue(rule.update(CHANGE, 0.999));
+        assertTrue(rule.isConverged());
+    }
+
+    @Test
+    public void testLossToleranceOffIgnoresLoss() {
+        final StoppingRule rule = new StoppingRule(100, 1e-6, 0);
+        for (int epoch = 0; epoch < 2 * StoppingRule.DIVERGENCE_PATIENCE; epoch++) {
+            assertFalse(rule.update(CHANGE, epoch % 3 == 0 ? Double.NaN : epoch));
+        }
+    }
+}
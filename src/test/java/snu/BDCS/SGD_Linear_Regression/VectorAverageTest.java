@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link VectorAverage} weights the messages by their number of
+ * examples, and that partial averages reduce to the same result.
+ */
+public class VectorAverageTest {
+
+    private static final double DELTA = 1e-12;
+
+    private final VectorAverage average = new VectorAverage(new TaskTracer("test", "OFF", 1.0));
+
+    @Test
+    public void testWeightedAverage() {
+        final Vector a = ModelMessage.of(new double[]{1.0, 2.0}, 4.0, 1);
+        final Vector b = ModelMessage.of(new double[]{4.0, -1.0}, 1.0, 3);
+        final Vector result = average.apply(Arrays.asList(a, b));
+        assertTrue(ModelMessage.isModel(result));
+        assertEquals(4, result.size());
+        assertEquals((1.0 + 3 * 4.0) / 4, result.get(0), DELTA);
+        assertEquals((2.0 - 3 * 1.0) / 4, result.get(1), DELTA);
+        assertEquals((4.0 + 3 * 1.0) / 4, ModelMessage.loss(result), DELTA);
+        assertEquals(4, ModelMessage.weight(result), 0.0);
+    }
+
+    @Test
+    public void testPartialAveragesReduceToTheSame() {
+        final Vector a = ModelMessage.of(new double[]{1.0, 2.0}, 0.5, 10);
+        final Vector b = ModelMessage.of(new double[]{-3.0, 0.25}, 1.5, 7);
+        final Vector c = ModelMessage.of(new double[]{8.0, 6.0}, 2.5, 3);
+        final Vector flat = average.apply(Arrays.asList(a, b, c));
+        final Vector tree = average.apply(Arrays.asList(average.apply(Arrays.asList(a, b)), c));
+        for (int i = 0; i < flat.size(); i++) {
+            assertEquals(flat.get(i), tree.get(i), DELTA);
+        }
+    }
+
+    @Test
+    public void testZeroWeightIsIgnored() {
+        final Vector empty = ModelMessage.of(new double[]{100.0, 100.0}, 100.0, 0);
+        final Vector a = ModelMessage.of(new double[]{1.0, 2.0}, 3.0, 5);
+        final Vector result = average.apply(Arrays.asList(empty, a, null));
+        assertEquals(1.0, result.get(0), 0.0);
+        assertEquals(2.0, result.get(1), 0.0);
+        assertEquals(3.0, ModelMessage.loss(result), 0.0);
+        assertEquals(5, ModelMessage.weight(result), 0.0);
+    }
+
+    @Test
+    public void testNothingToAverage() {
+        assertNull(average.apply(Collections.<Vector>emptyList()));
+        assertNull(average.apply(Collections.<Vector>singletonList(null)));
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2014 Microsoft Corporation
+ */
+package snu.BDCS.SGD_Linear_Regression;
+
+import com.microsoft.reef.examples.groupcomm.matmul.DenseVector;
+import com.microsoft.reef.examples.groupcomm.matmul.Vector;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the header and the round trips of the {@link VectorCodec} encodings.
+ */
+public class VectorCodecTest {
+
+    private final VectorCodec codec = new VectorCodec();
+
+    @Test
+    public void testSparseHeader() {
+        final double[] values = new double[10];
+        values[2] = 1.5;
+        values[7] = -3.0;
+        final ByteBuffer buffer = ByteBuffer.wrap(codec.encode(vector(values))).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(8 + 2 * 12, buffer.capacity());
+        assertEquals(10, buffer.getInt());
+        assertEquals(2, buffer.getInt());
+        assertEquals(2, buffer.getInt());
+        assertEquals(7, buffer.getInt());
+        assertEquals(1.5, buffer.getDouble(), 0.0);
+        assertEquals(-3.0, buffer.getDouble(), 0.0);
+    }
+
+    @Test
+    public void testSparseRoundTrip() {
+        final double[] values = new double[50];
+        values[0] = 1.0;
+        values[13] = -2.25;
+        values[49] = Double.MIN_VALUE;
+        final byte[] encoded = codec.encode(vector(values));
+        assertArrayEquals(encoded, VectorCodec.encode(values));
+        assertArrayEquals(values, toArray(codec.decode(encoded)), 0.0);
+
+        final double[] target = new double[50];
+        target[5] = 9.0;
+        VectorCodec.decodeInto(encoded, target);
+        assertArrayEquals(values, target, 0.0);
+    }
+
+    @Test
+    public void testDenseHeader() {
+        final double[] values = {1.0, 0.0, -2.0, 4.0};
+        final ByteBuffer buffer = ByteBuffer.wrap(codec.encode(vector(values))).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(8 + 4 * 8, buffer.capacity());
+        assertEquals(4, buffer.getInt());
+        assertEquals(-1, buffer.getInt());
+        for (double value : values) {
+            assertEquals(value, buffer.getDouble(), 0.0);
+        }
+    }
+
+    @Test
+    public void testDenseRoundTrip() {
+        final double[] values = {0.1, -1e300, Double.MIN_VALUE, 0.0, Math.PI, -0.0};
+        final byte[] encoded = codec.encode(vector(values));
+        assertArrayEquals(encoded, VectorCodec.encode(values));
+        assertArrayEquals(values, toArray(codec.decode(encoded)), 0.0);
+
+        final double[] target = new double[values.length];
+        VectorCodec.decodeInto(encoded, target);
+        assertArrayEquals(values, target, 0.0);
+    }
+
+    @Test
+    public void testWrapReadsDenseValuesInPlace() {
+        final double[] values = {3.0, 1.0, 4.0, 1.0, 5.0};
+        final DoubleBuffer wrapped = VectorCodec.wrap(VectorCodec.encode(values));
+        assertEquals(values.length, wrapped.remaining());
+        for (double value : values) {
+            assertEquals(value, wrapped.get(), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrapRejectsSparse() {
+        VectorCodec.wrap(VectorCodec.encode(new double[10]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeIntoRejectsOtherSize() {
+        VectorCodec.decodeInto(VectorCodec.encode(new double[]{1.0, 2.0}), new double[3]);
+    }
+
+    static Vector vector(double[] values) {
+        final Vector vector = new DenseVector(values.length);
+        for (int i = 0; i < values.length; i++) {
+            vector.set(i, values[i]);
+        }
+        return vector;
+    }
+
+    static double[] toArray(Vector vector) {
+        final double[] values = new double[vector.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = vector.get(i);
+        }
+        return values;
+    }
+}